@@ -0,0 +1,355 @@
+package memorypalace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the best codec for each chunk as it is compressed. A sample from the start of the chunk is
+ * compressed and decompressed with every candidate codec that supports the list's type, and each
+ * result is scored by a Policy that weighs the compressed size against the time taken to decompress.
+ * The chunk is then compressed with the winner, and the index of the winner is stored as the last
+ * byte of the compressed data.
+ *
+ * Because of that trailing byte, candidates must ignore any data after what they wrote. Candidates
+ * that read a tag of their own from the last byte, such as QuantizingCodec or another
+ * AdaptiveCodec, are given the data without the candidate index.
+ */
+public class AdaptiveCodec implements DoubleCodec, FloatCodec, IntCodec, LongCodec {
+
+    /**
+     * Scores the result of trying a codec on a sample of a chunk.
+     */
+    @FunctionalInterface
+    public interface Policy {
+
+        /**
+         * Score a candidate, the candidate with the lowest score is used.
+         * @param rawBytes The size of the sample before compression.
+         * @param compressedBytes The size of the sample after compression.
+         * @param decodeNanos The time taken to decompress the sample.
+         * @return The score for the candidate.
+         */
+        double score(int rawBytes, int compressedBytes, long decodeNanos);
+
+        /**
+         * @return A policy that only looks at the compressed size.
+         */
+        static Policy smallest() {
+            return (raw, size, nanos) -> size;
+        }
+
+        /**
+         * @return A policy that only looks at the decompression time.
+         */
+        static Policy fastest() {
+            return (raw, size, nanos) -> nanos;
+        }
+
+        /**
+         * A policy that treats a microsecond of decompression as costing the same as some number of
+         * bytes of memory.
+         * @param bytesPerMicrosecond The number of bytes a microsecond of decompression is worth.
+         * @return The policy.
+         */
+        static Policy weighted(double bytesPerMicrosecond) {
+            return (raw, size, nanos) -> size + nanos / 1000.0 * bytesPerMicrosecond;
+        }
+    }
+
+    /** The default number of values tried with each candidate. **/
+    public static final int DEFAULT_SAMPLE_SIZE = 256;
+
+    private final Policy policy;
+    private final int sampleSize;
+    private final List<ChunkCodec> candidates;
+    private final long[] selected;
+
+    private final DoubleCodec[] doubleCodecs;
+    private final FloatCodec[] floatCodecs;
+    private final IntCodec[] intCodecs;
+    private final LongCodec[] longCodecs;
+    /** For each type, the index in candidates of each typed codec. **/
+    private final int[] doubleIdx, floatIdx, intIdx, longIdx;
+
+    /** Scratch arrays that samples are decompressed into. **/
+    private final double[] doubleSample;
+    private final float[] floatSample;
+    private final int[] intSample;
+    private final long[] longSample;
+
+    /**
+     * Choose between the built in codecs, raw storage, deflate, delta, frame-of-reference, Gorilla and
+     * run-length encoding, with a policy that mostly favours size.
+     */
+    public AdaptiveCodec() {
+        this(Policy.weighted(16), DEFAULT_SAMPLE_SIZE, new RawCodec(), new DeflateCodec(), new DeltaCodec(),
+                new FrameOfReferenceCodec(), new GorillaCodec(), new RleCodec());
+    }
+
+    /**
+     *
+     * @param policy How to score the candidates.
+     * @param sampleSize The number of values from the start of a chunk to try the candidates on.
+     * @param candidates The codecs to choose between. Each list type uses the candidates that support it.
+     * @throws IllegalArgumentException if there are no candidates, more than 255, or sampleSize < 1.
+     */
+    public AdaptiveCodec(Policy policy, int sampleSize, ChunkCodec... candidates) {
+        if (policy == null)
+            throw new IllegalArgumentException("A policy is required");
+        if (sampleSize < 1)
+            throw new IllegalArgumentException("The sample size must be at least 1");
+        if (candidates.length == 0 || candidates.length > 255)
+            throw new IllegalArgumentException("There must be 1 to 255 candidate codecs");
+
+        this.policy = policy;
+        this.sampleSize = sampleSize;
+        this.candidates = List.of(candidates);
+        selected = new long[candidates.length];
+
+        var d = new ArrayList<Integer>();
+        var f = new ArrayList<Integer>();
+        var i = new ArrayList<Integer>();
+        var l = new ArrayList<Integer>();
+        for (int n = 0; n < candidates.length; ++n)
+        {
+            if (candidates[n] instanceof DoubleCodec)
+                d.add(n);
+            if (candidates[n] instanceof FloatCodec)
+                f.add(n);
+            if (candidates[n] instanceof IntCodec)
+                i.add(n);
+            if (candidates[n] instanceof LongCodec)
+                l.add(n);
+        }
+
+        doubleIdx = d.stream().mapToInt(Integer::intValue).toArray();
+        floatIdx = f.stream().mapToInt(Integer::intValue).toArray();
+        intIdx = i.stream().mapToInt(Integer::intValue).toArray();
+        longIdx = l.stream().mapToInt(Integer::intValue).toArray();
+        doubleCodecs = Arrays.stream(doubleIdx).mapToObj(n -> (DoubleCodec)candidates[n]).toArray(DoubleCodec[]::new);
+        floatCodecs = Arrays.stream(floatIdx).mapToObj(n -> (FloatCodec)candidates[n]).toArray(FloatCodec[]::new);
+        intCodecs = Arrays.stream(intIdx).mapToObj(n -> (IntCodec)candidates[n]).toArray(IntCodec[]::new);
+        longCodecs = Arrays.stream(longIdx).mapToObj(n -> (LongCodec)candidates[n]).toArray(LongCodec[]::new);
+
+        doubleSample = new double[sampleSize];
+        floatSample = new float[sampleSize];
+        intSample = new int[sampleSize];
+        longSample = new long[sampleSize];
+    }
+
+    /**
+     * Find out how often each candidate has been chosen.
+     * @return The number of chunks compressed by each candidate, by candidate name.
+     */
+    public Map<String, Long> selections() {
+        var ret = new LinkedHashMap<String, Long>();
+        for (int n = 0; n < candidates.size(); ++n)
+            ret.merge(candidates.get(n).name(), selected[n], Long::sum);
+        return Collections.unmodifiableMap(ret);
+    }
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        if (doubleCodecs.length == 0)
+            throw new UnsupportedOperationException("No candidate codec supports double values");
+
+        int sample = Math.min(count, sampleSize);
+        int best = 0;
+        byte[] bestBytes = null;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int n = 0; n < doubleCodecs.length; ++n)
+        {
+            var bytes = doubleCodecs[n].compress(values, sample);
+            long st = System.nanoTime();
+            doubleCodecs[n].decompress(bytes, doubleSample, sample);
+            double score = policy.score(sample * Double.BYTES, bytes.length, System.nanoTime() - st);
+            if (score < bestScore)
+            {
+                best = n;
+                bestBytes = bytes;
+                bestScore = score;
+            }
+        }
+
+        if (sample != count)
+            bestBytes = doubleCodecs[best].compress(values, count);
+        return tag(bestBytes, doubleIdx[best]);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        var codec = doubleCodecs[indexOf(compressed, doubleIdx)];
+        codec.decompress(untag(codec, compressed), values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int offset, int count) {
+        var codec = doubleCodecs[indexOf(compressed, doubleIdx)];
+        codec.decompress(untag(codec, compressed), values, offset, count);
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        if (floatCodecs.length == 0)
+            throw new UnsupportedOperationException("No candidate codec supports float values");
+
+        int sample = Math.min(count, sampleSize);
+        int best = 0;
+        byte[] bestBytes = null;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int n = 0; n < floatCodecs.length; ++n)
+        {
+            var bytes = floatCodecs[n].compress(values, sample);
+            long st = System.nanoTime();
+            floatCodecs[n].decompress(bytes, floatSample, sample);
+            double score = policy.score(sample * Float.BYTES, bytes.length, System.nanoTime() - st);
+            if (score < bestScore)
+            {
+                best = n;
+                bestBytes = bytes;
+                bestScore = score;
+            }
+        }
+
+        if (sample != count)
+            bestBytes = floatCodecs[best].compress(values, count);
+        return tag(bestBytes, floatIdx[best]);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        var codec = floatCodecs[indexOf(compressed, floatIdx)];
+        codec.decompress(untag(codec, compressed), values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int offset, int count) {
+        var codec = floatCodecs[indexOf(compressed, floatIdx)];
+        codec.decompress(untag(codec, compressed), values, offset, count);
+    }
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        if (intCodecs.length == 0)
+            throw new UnsupportedOperationException("No candidate codec supports int values");
+
+        int sample = Math.min(count, sampleSize);
+        int best = 0;
+        byte[] bestBytes = null;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int n = 0; n < intCodecs.length; ++n)
+        {
+            var bytes = intCodecs[n].compress(values, sample);
+            long st = System.nanoTime();
+            intCodecs[n].decompress(bytes, intSample, sample);
+            double score = policy.score(sample * Integer.BYTES, bytes.length, System.nanoTime() - st);
+            if (score < bestScore)
+            {
+                best = n;
+                bestBytes = bytes;
+                bestScore = score;
+            }
+        }
+
+        if (sample != count)
+            bestBytes = intCodecs[best].compress(values, count);
+        return tag(bestBytes, intIdx[best]);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        var codec = intCodecs[indexOf(compressed, intIdx)];
+        codec.decompress(untag(codec, compressed), values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int offset, int count) {
+        var codec = intCodecs[indexOf(compressed, intIdx)];
+        codec.decompress(untag(codec, compressed), values, offset, count);
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        if (longCodecs.length == 0)
+            throw new UnsupportedOperationException("No candidate codec supports long values");
+
+        int sample = Math.min(count, sampleSize);
+        int best = 0;
+        byte[] bestBytes = null;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int n = 0; n < longCodecs.length; ++n)
+        {
+            var bytes = longCodecs[n].compress(values, sample);
+            long st = System.nanoTime();
+            longCodecs[n].decompress(bytes, longSample, sample);
+            double score = policy.score(sample * Long.BYTES, bytes.length, System.nanoTime() - st);
+            if (score < bestScore)
+            {
+                best = n;
+                bestBytes = bytes;
+                bestScore = score;
+            }
+        }
+
+        if (sample != count)
+            bestBytes = longCodecs[best].compress(values, count);
+        return tag(bestBytes, longIdx[best]);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        var codec = longCodecs[indexOf(compressed, longIdx)];
+        codec.decompress(untag(codec, compressed), values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int offset, int count) {
+        var codec = longCodecs[indexOf(compressed, longIdx)];
+        codec.decompress(untag(codec, compressed), values, offset, count);
+    }
+
+    @Override
+    public boolean readsTrailingTag() {
+        return true;
+    }
+
+    @Override
+    public void copied(byte[] compressed, byte[] copy) {
+        // the candidate was told about the tagged array when it was made
+        candidates.get(compressed[compressed.length - 1] & 0xFF).copied(compressed, copy);
+    }
+
+    /**
+     * Add the candidate index to the end of the compressed data.
+     */
+    private byte[] tag(byte[] compressed, int candidate) {
+        selected[candidate]++;
+        var ret = Arrays.copyOf(compressed, compressed.length + 1);
+        ret[compressed.length] = (byte)candidate;
+        candidates.get(candidate).copied(compressed, ret);
+        return ret;
+    }
+
+    /**
+     * Find the position of the candidate that compressed the data in the typed codec array.
+     */
+    private static int indexOf(byte[] compressed, int[] typedIdx) {
+        int candidate = compressed[compressed.length - 1] & 0xFF;
+        int idx = Arrays.binarySearch(typedIdx, candidate);
+        if (idx < 0)
+            throw new IllegalStateException("Chunk was compressed by candidate " + candidate + " which does not support this type");
+        return idx;
+    }
+
+    /**
+     * Remove the last byte of the compressed data if the codec it is passed to reads its own tag
+     * from there.
+     */
+    static byte[] untag(ChunkCodec codec, byte[] compressed) {
+        return codec.readsTrailingTag() ? Arrays.copyOf(compressed, compressed.length - 1) : compressed;
+    }
+}
@@ -0,0 +1,160 @@
+package memorypalace;
+
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Evicts with the Adaptive Replacement Cache algorithm of Megiddo and Modha. Chunks read once since
+ * they were decompressed are kept apart from chunks read again, and a ghost list of recently evicted
+ * chunks of each kind is kept. A miss on a ghost shows which kind was evicted too soon, and moves
+ * the target split between the two kinds towards it. A scan over many chunks only passes through
+ * the read once side, so it does not push out chunks that are read repeatedly.
+ */
+public class ArcPolicy implements EvictionPolicy {
+
+    /** Chunks held that have been read once, and twice or more, least recently used first. **/
+    private final LinkedHashSet<Object> t1 = new LinkedHashSet<>();
+    private final LinkedHashSet<Object> t2 = new LinkedHashSet<>();
+    /** Ghosts of chunks recently evicted from t1 and t2. **/
+    private final LinkedHashSet<Object> b1 = new LinkedHashSet<>();
+    private final LinkedHashSet<Object> b2 = new LinkedHashSet<>();
+
+    private int capacity = 2;
+    /** The target size of t1. **/
+    private double p;
+
+    /** The chunk most recently decompressed, which is never evicted. **/
+    private Object newest;
+    /** True if the most recent miss was on a ghost in b2. **/
+    private boolean missInB2;
+
+    private long hits;
+    private long misses;
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void recordHit(Object key) {
+        if (t1.remove(key) || t2.remove(key))
+        {
+            hits++;
+            t2.add(key);
+        }
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        if (t1.contains(key) || t2.contains(key))
+            return;
+
+        misses++;
+        newest = key;
+        missInB2 = false;
+        if (b1.contains(key))
+        {
+            p = Math.min(capacity, p + Math.max(b2.size() / (double)b1.size(), 1));
+            b1.remove(key);
+            t2.add(key);
+        }
+        else if (b2.contains(key))
+        {
+            p = Math.max(0, p - Math.max(b1.size() / (double)b2.size(), 1));
+            b2.remove(key);
+            t2.add(key);
+            missInB2 = true;
+        }
+        else
+            t1.add(key);
+    }
+
+    @Override
+    public Object evict() {
+        if (t1.isEmpty() && t2.isEmpty())
+            throw new NoSuchElementException();
+
+        boolean fromT1 = !t1.isEmpty() && (t1.size() > p || (missInB2 && t1.size() == (int)p));
+        var from = fromT1 ? t1 : t2;
+        if (!hasVictim(from))
+            from = from == t1 ? t2 : t1;
+        if (!hasVictim(from))
+            from = t1.isEmpty() ? t2 : t1;
+
+        Object victim = null;
+        for (var key : from)
+        {
+            if (key != newest || from.size() == 1)
+            {
+                victim = key;
+                break;
+            }
+        }
+
+        from.remove(victim);
+        (from == t1 ? b1 : b2).add(victim);
+        trimGhosts();
+        return victim;
+    }
+
+    @Override
+    public void remove(Object key) {
+        t1.remove(key);
+        t2.remove(key);
+        b1.remove(key);
+        b2.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        t1.clear();
+        t2.clear();
+        b1.clear();
+        b2.clear();
+        p = 0;
+        newest = null;
+    }
+
+    @Override
+    public int size() {
+        return t1.size() + t2.size();
+    }
+
+    @Override
+    public long hitCount() {
+        return hits;
+    }
+
+    @Override
+    public long missCount() {
+        return misses;
+    }
+
+    /**
+     * Check that a list holds a chunk other than the newest.
+     */
+    private boolean hasVictim(LinkedHashSet<Object> list) {
+        return list.size() > 1 || (list.size() == 1 && !list.contains(newest));
+    }
+
+    /**
+     * Keep the ghost lists within the sizes ARC allows, t1 and b1 together hold at most capacity
+     * chunks, and all four lists at most twice that.
+     */
+    private void trimGhosts() {
+        var it = b1.iterator();
+        while (t1.size() + b1.size() > capacity && it.hasNext())
+        {
+            it.next();
+            it.remove();
+        }
+
+        it = b2.iterator();
+        while (t1.size() + t2.size() + b1.size() + b2.size() > capacity * 2 && it.hasNext())
+        {
+            it.next();
+            it.remove();
+        }
+    }
+}
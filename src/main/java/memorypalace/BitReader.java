@@ -0,0 +1,55 @@
+package memorypalace;
+
+/**
+ * Reads values written by a BitWriter. A reader is reset for each array so it can be reused without
+ * allocating.
+ */
+final class BitReader {
+
+    private byte[] bytes;
+    private int pos;
+    /** Bits that have been loaded from bytes but not yet read. **/
+    private long pending;
+    private int pendingBits;
+
+    void reset(byte[] bytes) {
+        reset(bytes, 0);
+    }
+
+    /**
+     * Start reading part way through an array.
+     * @param bytes The data to read.
+     * @param offset The index of the first byte to read.
+     */
+    void reset(byte[] bytes, int offset) {
+        this.bytes = bytes;
+        pos = offset;
+        pending = 0;
+        pendingBits = 0;
+    }
+
+    /**
+     * Read the next value.
+     * @param bits The number of bits to read, 0 to 64.
+     * @return The value with the read bits in the low order positions.
+     */
+    long read(int bits) {
+        if (bits > 32)
+        {
+            long high = read(bits - 32);
+            return (high << 32) | read(32);
+        }
+
+        while (pendingBits < bits)
+        {
+            pending = (pending << 8) | (pos < bytes.length ? bytes[pos++] & 0xFF : 0);
+            pendingBits += 8;
+        }
+        pendingBits -= bits;
+        return (pending >>> pendingBits) & ((1L << bits) - 1);
+    }
+
+    boolean readBit() {
+        return read(1) != 0;
+    }
+}
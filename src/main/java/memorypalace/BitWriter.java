@@ -0,0 +1,65 @@
+package memorypalace;
+
+import java.util.Arrays;
+
+/**
+ * Writes values of arbitrary bit widths, most significant bit first, to a reusable byte array.
+ */
+final class BitWriter {
+
+    private byte[] bytes = new byte[0];
+    private int pos;
+    /** Bits that have been written but do not yet fill a byte. **/
+    private long pending;
+    private int pendingBits;
+
+    /**
+     * Start a new block of output.
+     * @param capacity The largest number of bytes that will be written.
+     */
+    void reset(int capacity) {
+        if (bytes.length < capacity)
+            bytes = new byte[capacity];
+        pos = 0;
+        pending = 0;
+        pendingBits = 0;
+    }
+
+    /**
+     * Write the low order bits of a value.
+     * @param value The value to write.
+     * @param bits The number of bits of value to write, 0 to 64.
+     */
+    void write(long value, int bits) {
+        if (bits > 32)
+        {
+            write(value >>> 32, bits - 32);
+            bits = 32;
+        }
+
+        pending = (pending << bits) | (value & ((1L << bits) - 1));
+        pendingBits += bits;
+        while (pendingBits >= 8)
+        {
+            pendingBits -= 8;
+            bytes[pos++] = (byte)(pending >>> pendingBits);
+        }
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Finish the block of output.
+     * @return A right sized copy of everything written since reset.
+     */
+    byte[] toByteArray() {
+        if (pendingBits > 0)
+        {
+            bytes[pos++] = (byte)(pending << (8 - pendingBits));
+            pendingBits = 0;
+        }
+        return Arrays.copyOf(bytes, pos);
+    }
+}
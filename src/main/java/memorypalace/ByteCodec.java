@@ -0,0 +1,139 @@
+package memorypalace;
+
+import java.nio.*;
+
+/**
+ * A base class for codecs that work on the raw bytes of a chunk rather than on its values. The values
+ * are laid out as native order bytes before they are handed to encode, and read back the same way
+ * after decode.
+ *
+ * The byte layout is staged in a scratch buffer that is kept between calls and only grows, so moving
+ * values in and out of bytes does not create garbage.
+ */
+public abstract class ByteCodec implements DoubleCodec, FloatCodec, IntCodec, LongCodec {
+
+    /** Scratch space for the byte layout of a chunk, and typed views of it. **/
+    private ByteBuffer scratch = ByteBuffer.allocate(0);
+    private DoubleBuffer doubleView;
+    private FloatBuffer floatView;
+    private IntBuffer intView;
+    private LongBuffer longView;
+
+    /**
+     * Compress a block of bytes.
+     * @param raw The bytes to compress.
+     * @param length The number of bytes in raw to compress.
+     * @param width The number of bytes in each value.
+     * @return The compressed bytes.
+     */
+    protected abstract byte[] encode(byte[] raw, int length, int width);
+
+    /**
+     * Reverse the encode operation.
+     * @param compressed The bytes returned by encode.
+     * @param raw The array to fill with the original bytes, this may be larger than length.
+     * @param length The number of bytes that were encoded.
+     * @param width The number of bytes in each value.
+     */
+    protected abstract void decode(byte[] compressed, byte[] raw, int length, int width);
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        ensureScratch(count * Double.BYTES);
+        doubleView.clear();
+        doubleView.put(values, 0, count);
+        return encode(scratch.array(), count * Double.BYTES, Double.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int offset, int count) {
+        ensureScratch(count * Double.BYTES);
+        decode(compressed, scratch.array(), count * Double.BYTES, Double.BYTES);
+        doubleView.clear();
+        doubleView.get(values, offset, count);
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        ensureScratch(count * Float.BYTES);
+        floatView.clear();
+        floatView.put(values, 0, count);
+        return encode(scratch.array(), count * Float.BYTES, Float.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int offset, int count) {
+        ensureScratch(count * Float.BYTES);
+        decode(compressed, scratch.array(), count * Float.BYTES, Float.BYTES);
+        floatView.clear();
+        floatView.get(values, offset, count);
+    }
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        ensureScratch(count * Integer.BYTES);
+        intView.clear();
+        intView.put(values, 0, count);
+        return encode(scratch.array(), count * Integer.BYTES, Integer.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int offset, int count) {
+        ensureScratch(count * Integer.BYTES);
+        decode(compressed, scratch.array(), count * Integer.BYTES, Integer.BYTES);
+        intView.clear();
+        intView.get(values, offset, count);
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        ensureScratch(count * Long.BYTES);
+        longView.clear();
+        longView.put(values, 0, count);
+        return encode(scratch.array(), count * Long.BYTES, Long.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int offset, int count) {
+        ensureScratch(count * Long.BYTES);
+        decode(compressed, scratch.array(), count * Long.BYTES, Long.BYTES);
+        longView.clear();
+        longView.get(values, offset, count);
+    }
+
+    /**
+     * Make sure the scratch buffer can hold at least size bytes.
+     * @param size The number of bytes required.
+     */
+    private void ensureScratch(int size) {
+        if (doubleView != null && scratch.capacity() >= size)
+            return;
+
+        scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity()));
+        scratch.order(ByteOrder.nativeOrder());
+        doubleView = scratch.asDoubleBuffer();
+        floatView = scratch.asFloatBuffer();
+        intView = scratch.asIntBuffer();
+        longView = scratch.asLongBuffer();
+    }
+}
@@ -0,0 +1,60 @@
+package memorypalace;
+
+/**
+ * A ChunkCodec turns the contents of a chunk into a compressed byte array and back again. Each of the
+ * list classes takes a codec when it is built, so the compression used can be matched to the data being
+ * stored. A codec states which primitive types it can handle by implementing one or more of
+ * DoubleCodec, FloatCodec, IntCodec and LongCodec.
+ *
+ * Codecs are owned by the list they were given to and are not required to be thread safe.
+ */
+public interface ChunkCodec {
+
+    /**
+     * A short, human readable name for the codec.
+     * @return The name of the codec.
+     */
+    default String name() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Codecs that can read a single value straight from the compressed data return true, and
+     * implement the typed get methods such as DoubleCodec.getDouble. A list then answers get on a
+     * compressed chunk without decompressing it.
+     * @return true if single values can be read from compressed data.
+     */
+    default boolean supportsGet() {
+        return false;
+    }
+
+    /**
+     * Codecs that can search compressed data for a value return true, and implement the typed indexOf
+     * methods such as DoubleCodec.indexOfDouble. A list then searches compressed chunks without
+     * decompressing them.
+     * @return true if compressed data can be searched.
+     */
+    default boolean supportsIndexOf() {
+        return false;
+    }
+
+    /**
+     * Codecs that store a tag of their own in the last byte of the compressed data, as
+     * AdaptiveCodec and QuantizingCodec do, return true. A codec that wraps one of these and adds
+     * its own trailing data removes it again before passing the data on.
+     * @return true if the codec reads the last byte of the compressed data as a tag.
+     */
+    default boolean readsTrailingTag() {
+        return false;
+    }
+
+    /**
+     * A codec that wraps this one and keeps its compressed data in a copy of the array compress
+     * returned, for example with a tag added, calls this with both arrays. Codecs that keep track of
+     * the arrays they returned, as DeflateCodec does for its dictionaries, follow the copy.
+     * @param compressed The array returned by compress.
+     * @param copy The array the data will be held in.
+     */
+    default void copied(byte[] compressed, byte[] copy) {
+    }
+}
@@ -0,0 +1,73 @@
+package memorypalace;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts with the CLOCK algorithm. Each chunk has a referenced bit that is set when it is read. The
+ * clock hand sweeps the chunks in the order they were decompressed, giving referenced chunks a
+ * second chance by clearing their bit and moving past them, and evicts the first chunk found without
+ * it. Reads only set a bit, so they are cheaper than with LRU.
+ */
+public class ClockPolicy implements EvictionPolicy {
+
+    /** The chunks held with their referenced bits, in the order the hand visits them. **/
+    private final LinkedHashMap<Object, Boolean> ring = new LinkedHashMap<>();
+
+    private long hits;
+    private long misses;
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordHit(Object key) {
+        if (ring.replace(key, Boolean.TRUE) != null)
+            hits++;
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        // new chunks start referenced so that a sweep can't reach them before the older chunks
+        if (ring.put(key, Boolean.TRUE) == null)
+            misses++;
+    }
+
+    @Override
+    public Object evict() {
+        while (true)
+        {
+            var it = ring.entrySet().iterator();
+            var e = it.next();
+            it.remove();
+            if (!e.getValue())
+                return e.getKey();
+            ring.put(e.getKey(), Boolean.FALSE);
+        }
+    }
+
+    @Override
+    public void remove(Object key) {
+        ring.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        ring.clear();
+    }
+
+    @Override
+    public int size() {
+        return ring.size();
+    }
+
+    @Override
+    public long hitCount() {
+        return hits;
+    }
+
+    @Override
+    public long missCount() {
+        return misses;
+    }
+}
@@ -0,0 +1,498 @@
+package memorypalace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Finds the codec and chunk size that suit a particular list's data. A sample is taken from the start
+ * of the list and every candidate codec that supports the list's type is run over it with every chunk
+ * size. The compression ratio and the compression and decompression speeds of each combination are
+ * reported, and the combination that scores best under an AdaptiveCodec.Policy is turned into a
+ * recommended set of constructor parameters.
+ *
+ * It can also be run from the command line on a text file holding one value per line:
+ * <pre>
+ *     java memorypalace.CodecAdvisor double values.txt
+ * </pre>
+ */
+public class CodecAdvisor {
+
+    /** The default largest number of values taken from the start of a list. **/
+    public static final int DEFAULT_SAMPLE_SIZE = 1024 * 64;
+
+    /** The default fraction of the list's compressed size that may be spent on decompressed chunks. **/
+    public static final double DEFAULT_HOT_FRACTION = 0.1;
+
+    /**
+     * The result of running one codec over the sample with one chunk size.
+     */
+    public static class Result {
+
+        private final String codec;
+        private final Supplier<ChunkCodec> supplier;
+        private final int chunkSize;
+        private final long rawBytes;
+        private final long compressedBytes;
+        private final long compressNanos;
+        private final long decompressNanos;
+        private final double score;
+
+        Result(String codec, Supplier<ChunkCodec> supplier, int chunkSize, long rawBytes, long compressedBytes,
+               long compressNanos, long decompressNanos, double score) {
+            this.codec = codec;
+            this.supplier = supplier;
+            this.chunkSize = chunkSize;
+            this.rawBytes = rawBytes;
+            this.compressedBytes = compressedBytes;
+            this.compressNanos = compressNanos;
+            this.decompressNanos = decompressNanos;
+            this.score = score;
+        }
+
+        /**
+         * @return The name of the codec.
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * @return A new instance of the codec, set up as it was when it was tried.
+         */
+        public ChunkCodec newCodec() {
+            return supplier.get();
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * @return The size of the sample before compression divided by its size after.
+         */
+        public double getRatio() {
+            return compressedBytes == 0 ? 0 : rawBytes / (double)compressedBytes;
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes;
+        }
+
+        public double getCompressMBs() {
+            return rawBytes / 1e6 / (Math.max(compressNanos, 1) / 1e9);
+        }
+
+        public double getDecompressMBs() {
+            return rawBytes / 1e6 / (Math.max(decompressNanos, 1) / 1e9);
+        }
+
+        /**
+         * @return The score given by the advisor's policy, lower is better.
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s chunk=%6d ratio=%6.2f compress=%8.1f MB/s decompress=%8.1f MB/s",
+                    codec, chunkSize, getRatio(), getCompressMBs(), getDecompressMBs());
+        }
+    }
+
+    /**
+     * The results of advising on a list, best first, and the constructor parameters recommended.
+     */
+    public static class Report {
+
+        private final String listType;
+        private final List<Result> results;
+        private final int allowedDecompressedCount;
+
+        Report(String listType, List<Result> results, int allowedDecompressedCount) {
+            this.listType = listType;
+            this.results = results;
+            this.allowedDecompressedCount = allowedDecompressedCount;
+        }
+
+        /**
+         * @return Every combination tried, best first.
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @return The best combination.
+         */
+        public Result getBest() {
+            return results.get(0);
+        }
+
+        public int getChunkSize() {
+            return getBest().getChunkSize();
+        }
+
+        /**
+         * The overload factor only matters when inserting into the middle of a list, which the sample
+         * says nothing about, so the default is recommended.
+         * @return The recommended overload factor.
+         */
+        public double getOverloadFactor() {
+            return 1.5;
+        }
+
+        public int getAllowedDecompressedCount() {
+            return allowedDecompressedCount;
+        }
+
+        /**
+         * @return A new instance of the recommended codec, to pass to the list's constructor.
+         */
+        public ChunkCodec newCodec() {
+            return getBest().newCodec();
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder();
+            for (var r : results)
+                sb.append(r).append('\n');
+            sb.append(String.format("Recommended: new %s(%d, %s, %d, codec) with codec %s", listType, getChunkSize(),
+                    getOverloadFactor(), allowedDecompressedCount, getBest().getCodec()));
+            return sb.toString();
+        }
+    }
+
+    private final List<Supplier<ChunkCodec>> codecs;
+    private final int[] chunkSizes;
+    private final AdaptiveCodec.Policy policy;
+    private final int sampleSize;
+    private final double hotFraction;
+    private final int rounds;
+
+    /**
+     * Try the built in lossless codecs with chunk sizes from 128 to 16K values, favouring size much as
+     * AdaptiveCodec does.
+     */
+    public CodecAdvisor() {
+        this(defaultCodecs(), new int[] {128, 512, 1024, 4096, 1024 * 16}, AdaptiveCodec.Policy.weighted(16),
+                DEFAULT_SAMPLE_SIZE, DEFAULT_HOT_FRACTION, 3);
+    }
+
+    /**
+     *
+     * @param codecs Suppliers of the codecs to try. A new codec is made for each run, as codecs keep state.
+     * @param chunkSizes The chunk sizes to try, sizes larger than the sample are skipped.
+     * @param policy Scores each combination, the lowest score is recommended. The policy is given the
+     *               size of the sample, its compressed size and the time taken to decompress it.
+     * @param sampleSize The largest number of values taken from the start of a list.
+     * @param hotFraction The fraction of the list's compressed size that may be spent on decompressed
+     *                    chunks, this decides the allowed decompressed count recommended.
+     * @param rounds The number of times each combination is run, the fastest run is reported.
+     * @throws IllegalArgumentException if there are no codecs or chunk sizes, a chunk size < 10,
+     * sampleSize < 10, hotFraction <= 0 or rounds < 1.
+     */
+    public CodecAdvisor(List<Supplier<ChunkCodec>> codecs, int[] chunkSizes, AdaptiveCodec.Policy policy,
+                        int sampleSize, double hotFraction, int rounds) {
+        if (codecs == null || codecs.isEmpty())
+            throw new IllegalArgumentException("At least one codec is required");
+        if (chunkSizes == null || chunkSizes.length == 0)
+            throw new IllegalArgumentException("At least one chunk size is required");
+        for (int size : chunkSizes)
+            if (size < 10)
+                throw new IllegalArgumentException("Chunk sizes must be at least 10");
+        if (policy == null)
+            throw new IllegalArgumentException("A policy is required");
+        if (sampleSize < 10)
+            throw new IllegalArgumentException("The sample size must be at least 10");
+        if (!(hotFraction > 0))
+            throw new IllegalArgumentException("The hot fraction must be greater than 0");
+        if (rounds < 1)
+            throw new IllegalArgumentException("There must be at least 1 round");
+
+        this.codecs = List.copyOf(codecs);
+        this.chunkSizes = chunkSizes.clone();
+        this.policy = policy;
+        this.sampleSize = sampleSize;
+        this.hotFraction = hotFraction;
+        this.rounds = rounds;
+    }
+
+    /**
+     * @return Suppliers of every built in lossless codec, other than AdaptiveCodec.
+     */
+    public static List<Supplier<ChunkCodec>> defaultCodecs() {
+        return List.of(RawCodec::new, DeflateCodec::new, Lz4Codec::new,
+                () -> new ShuffleCodec(), () -> new ShuffleCodec(new Lz4Codec()),
+                DeltaCodec::new, FrameOfReferenceCodec::new, GorillaCodec::new, RleCodec::new, DictionaryCodec::new);
+    }
+
+    public Report advise(ListOfDouble list) {
+        var sample = new double[(int)Math.min(list.size(), sampleSize)];
+        var it = list.doubleIterator();
+        for (int n = 0; n < sample.length; ++n)
+            sample[n] = it.next();
+        return advise(new Sample("ListOfDouble", sample.length, Double.BYTES, list.size()) {
+            final double[] dest = new double[sample.length];
+
+            @Override
+            boolean supports(ChunkCodec codec) {
+                return codec instanceof DoubleCodec;
+            }
+
+            @Override
+            byte[] compress(ChunkCodec codec, int offset, int count) {
+                return ((DoubleCodec)codec).compress(chunk(sample, offset, count), count);
+            }
+
+            @Override
+            void decompress(ChunkCodec codec, byte[] compressed, int count) {
+                ((DoubleCodec)codec).decompress(compressed, dest, count);
+            }
+
+            double[] chunk(double[] values, int offset, int count) {
+                if (offset == 0)
+                    return values;
+                System.arraycopy(values, offset, dest, 0, count);
+                return dest;
+            }
+        });
+    }
+
+    public Report advise(ListOfFloat list) {
+        var sample = new float[(int)Math.min(list.size(), sampleSize)];
+        var it = list.floatIterator();
+        for (int n = 0; n < sample.length; ++n)
+            sample[n] = it.next();
+        return advise(new Sample("ListOfFloat", sample.length, Float.BYTES, list.size()) {
+            final float[] dest = new float[sample.length];
+
+            @Override
+            boolean supports(ChunkCodec codec) {
+                return codec instanceof FloatCodec;
+            }
+
+            @Override
+            byte[] compress(ChunkCodec codec, int offset, int count) {
+                return ((FloatCodec)codec).compress(chunk(sample, offset, count), count);
+            }
+
+            @Override
+            void decompress(ChunkCodec codec, byte[] compressed, int count) {
+                ((FloatCodec)codec).decompress(compressed, dest, count);
+            }
+
+            float[] chunk(float[] values, int offset, int count) {
+                if (offset == 0)
+                    return values;
+                System.arraycopy(values, offset, dest, 0, count);
+                return dest;
+            }
+        });
+    }
+
+    public Report advise(ListOfInt list) {
+        var sample = new int[(int)Math.min(list.size(), sampleSize)];
+        var it = list.intIterator();
+        for (int n = 0; n < sample.length; ++n)
+            sample[n] = it.next();
+        return advise(new Sample("ListOfInt", sample.length, Integer.BYTES, list.size()) {
+            final int[] dest = new int[sample.length];
+
+            @Override
+            boolean supports(ChunkCodec codec) {
+                return codec instanceof IntCodec;
+            }
+
+            @Override
+            byte[] compress(ChunkCodec codec, int offset, int count) {
+                return ((IntCodec)codec).compress(chunk(sample, offset, count), count);
+            }
+
+            @Override
+            void decompress(ChunkCodec codec, byte[] compressed, int count) {
+                ((IntCodec)codec).decompress(compressed, dest, count);
+            }
+
+            int[] chunk(int[] values, int offset, int count) {
+                if (offset == 0)
+                    return values;
+                System.arraycopy(values, offset, dest, 0, count);
+                return dest;
+            }
+        });
+    }
+
+    public Report advise(ListOfLong list) {
+        var sample = new long[(int)Math.min(list.size(), sampleSize)];
+        var it = list.longIterator();
+        for (int n = 0; n < sample.length; ++n)
+            sample[n] = it.next();
+        return advise(new Sample("ListOfLong", sample.length, Long.BYTES, list.size()) {
+            final long[] dest = new long[sample.length];
+
+            @Override
+            boolean supports(ChunkCodec codec) {
+                return codec instanceof LongCodec;
+            }
+
+            @Override
+            byte[] compress(ChunkCodec codec, int offset, int count) {
+                return ((LongCodec)codec).compress(chunk(sample, offset, count), count);
+            }
+
+            @Override
+            void decompress(ChunkCodec codec, byte[] compressed, int count) {
+                ((LongCodec)codec).decompress(compressed, dest, count);
+            }
+
+            long[] chunk(long[] values, int offset, int count) {
+                if (offset == 0)
+                    return values;
+                System.arraycopy(values, offset, dest, 0, count);
+                return dest;
+            }
+        });
+    }
+
+    /**
+     * The values taken from a list, and how to pass them to a codec of the list's type.
+     */
+    private abstract static class Sample {
+        final String listType;
+        final int length;
+        final int width;
+        final long listSize;
+
+        Sample(String listType, int length, int width, long listSize) {
+            this.listType = listType;
+            this.length = length;
+            this.width = width;
+            this.listSize = listSize;
+        }
+
+        abstract boolean supports(ChunkCodec codec);
+
+        /** Compress count values starting at offset in the sample. **/
+        abstract byte[] compress(ChunkCodec codec, int offset, int count);
+
+        abstract void decompress(ChunkCodec codec, byte[] compressed, int count);
+    }
+
+    private Report advise(Sample sample) {
+        if (sample.length == 0)
+            throw new IllegalArgumentException("The list is empty");
+
+        var results = new ArrayList<Result>();
+        var sizes = new ArrayList<Integer>();
+        for (int size : chunkSizes)
+            if (size <= sample.length)
+                sizes.add(size);
+        if (sizes.isEmpty())
+            sizes.add(sample.length);
+
+        for (var supplier : codecs)
+        {
+            if (!sample.supports(supplier.get()))
+                continue;
+            for (int chunkSize : sizes)
+                results.add(run(sample, supplier, chunkSize));
+        }
+        if (results.isEmpty())
+            throw new IllegalArgumentException("None of the codecs support " + sample.listType);
+
+        results.sort(Comparator.comparingDouble(Result::getScore));
+        var best = results.get(0);
+        double listBytes = sample.listSize * sample.width / Math.max(best.getRatio(), 1);
+        double chunkBytes = (double)best.getChunkSize() * sample.width;
+        int allowed = (int)Math.max(2, Math.min(Integer.MAX_VALUE, listBytes * hotFraction / chunkBytes));
+        return new Report(sample.listType, Collections.unmodifiableList(results), allowed);
+    }
+
+    /**
+     * Compress and decompress the whole sample in chunks, the last of which may be short as it would
+     * be in a list. Every chunk size covers the same values so that their scores can be compared.
+     */
+    private Result run(Sample sample, Supplier<ChunkCodec> supplier, int chunkSize) {
+        var codec = supplier.get();
+        int chunkCount = (sample.length + chunkSize - 1) / chunkSize;
+        var compressed = new byte[chunkCount][];
+        long compressedBytes = 0;
+        long compressNanos = Long.MAX_VALUE;
+        long decompressNanos = Long.MAX_VALUE;
+
+        for (int round = 0; round < rounds; ++round)
+        {
+            long st = System.nanoTime();
+            for (int n = 0; n < chunkCount; ++n)
+                compressed[n] = sample.compress(codec, n * chunkSize, count(sample, n, chunkSize));
+            compressNanos = Math.min(compressNanos, System.nanoTime() - st);
+
+            st = System.nanoTime();
+            for (int n = 0; n < chunkCount; ++n)
+                sample.decompress(codec, compressed[n], count(sample, n, chunkSize));
+            decompressNanos = Math.min(decompressNanos, System.nanoTime() - st);
+        }
+
+        for (var c : compressed)
+            compressedBytes += c.length;
+        long rawBytes = (long)sample.length * sample.width;
+        double score = policy.score((int)Math.min(rawBytes, Integer.MAX_VALUE),
+                (int)Math.min(compressedBytes, Integer.MAX_VALUE), decompressNanos);
+        return new Result(codec.name(), supplier, chunkSize, rawBytes, compressedBytes, compressNanos,
+                decompressNanos, score);
+    }
+
+    /**
+     * @return The number of values in the n'th chunk of the sample.
+     */
+    private static int count(Sample sample, int n, int chunkSize) {
+        return Math.min(chunkSize, sample.length - n * chunkSize);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2)
+        {
+            System.out.println("Usage: CodecAdvisor double|float|int|long <file with one value per line>");
+            return;
+        }
+
+        var lines = Files.readAllLines(Path.of(args[1]));
+        var advisor = new CodecAdvisor();
+        Report report;
+        switch (args[0])
+        {
+            case "double":
+                var doubles = new ListOfDouble();
+                lines.stream().filter(s -> !s.isBlank()).forEach(s -> doubles.add(Double.parseDouble(s.trim())));
+                report = advisor.advise(doubles);
+                break;
+            case "float":
+                var floats = new ListOfFloat();
+                lines.stream().filter(s -> !s.isBlank()).forEach(s -> floats.add(Float.parseFloat(s.trim())));
+                report = advisor.advise(floats);
+                break;
+            case "int":
+                var ints = new ListOfInt();
+                lines.stream().filter(s -> !s.isBlank()).forEach(s -> ints.add(Integer.parseInt(s.trim())));
+                report = advisor.advise(ints);
+                break;
+            case "long":
+                var longs = new ListOfLong();
+                lines.stream().filter(s -> !s.isBlank()).forEach(s -> longs.add(Long.parseLong(s.trim())));
+                report = advisor.advise(longs);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown type " + args[0]);
+        }
+
+        System.out.println(report);
+    }
+}
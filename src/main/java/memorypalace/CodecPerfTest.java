@@ -0,0 +1,87 @@
+package memorypalace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the codecs on a few kinds of data. For each codec this prints the compression ratio, the
+ * compression and decompression speed in MB/s, and the time taken to read a list at random indexes,
+ * where every read is likely to decompress a chunk.
+ */
+public class CodecPerfTest {
+
+    static final int CHUNK_SIZE = 1024 * 16;
+    static final int CHUNK_COUNT = 64;
+    static final int RANDOM_GETS = 200_000;
+
+    public static void main(String[] args) {
+        var data = new LinkedHashMap<String, double[]>();
+        var r = new Random(1);
+
+        var repeating = new double[CHUNK_SIZE];
+        for (int n = 0; n < CHUNK_SIZE; ++n)
+            repeating[n] = n % 360;
+        data.put("Repeating", repeating);
+
+        var walk = new double[CHUNK_SIZE];
+        for (int n = 1; n < CHUNK_SIZE; ++n)
+            walk[n] = walk[n - 1] + r.nextInt(5) - 2;
+        data.put("Walk", walk);
+
+        var random = new double[CHUNK_SIZE];
+        for (int n = 0; n < CHUNK_SIZE; ++n)
+            random[n] = r.nextDouble();
+        data.put("Random", random);
+
+        for (int n = 0; n < 3; ++n)
+        {
+            for (var e : data.entrySet())
+            {
+                System.out.println(e.getKey());
+                for (var c : codecs().entrySet())
+                    runCodec(c.getKey(), c.getValue(), e.getValue());
+            }
+            System.out.println();
+        }
+    }
+
+    static Map<String, DoubleCodec> codecs() {
+        var ret = new LinkedHashMap<String, DoubleCodec>();
+        ret.put("Deflate", new DeflateCodec());
+        ret.put("LZ4", new Lz4Codec());
+        ret.put("Shuffle+LZ4", new ShuffleCodec(new Lz4Codec()));
+        ret.put("Gorilla", new GorillaCodec());
+        ret.put("Raw", new RawCodec());
+        return ret;
+    }
+
+    static void runCodec(String name, DoubleCodec codec, double[] values) {
+        var dest = new double[values.length];
+        long bytes = (long)values.length * Double.BYTES * CHUNK_COUNT;
+
+        long st = System.nanoTime();
+        byte[] compressed = null;
+        for (int n = 0; n < CHUNK_COUNT; ++n)
+            compressed = codec.compress(values, values.length);
+        double compressMBs = bytes / 1e6 / ((System.nanoTime() - st) / 1e9);
+
+        st = System.nanoTime();
+        for (int n = 0; n < CHUNK_COUNT; ++n)
+            codec.decompress(compressed, dest, values.length);
+        double decompressMBs = bytes / 1e6 / ((System.nanoTime() - st) / 1e9);
+
+        var lst = new ListOfDouble(1024, 1.5, 2, codec);
+        for (int n = 0; n < 16; ++n)
+            lst.addAll(values);
+        var r = new Random(2);
+        double s = 0;
+        st = System.currentTimeMillis();
+        for (int n = 0; n < RANDOM_GETS; ++n)
+            s += lst.get(r.nextInt((int)lst.size()));
+        long getTime = System.currentTimeMillis() - st;
+
+        System.out.println(String.format("  %-12s ratio=%6.2f compress=%8.1f MB/s decompress=%8.1f MB/s random get=%6d ms",
+                name, values.length * (double)Double.BYTES / compressed.length, compressMBs, decompressMBs, getTime));
+    }
+}
@@ -0,0 +1,241 @@
+package memorypalace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A memory budget for decompressed chunks that is shared by many lists. Each list still applies its
+ * own limits, and on top of that every list registered with a budget reports the chunks it
+ * decompresses and reads to it. When the decompressed chunks of all of the lists together use more
+ * than the budget, the least recently used chunks are compressed, whichever list owns them. Lists
+ * that are not being used therefore give up their memory to the ones that are.
+ *
+ * The budget's own bookkeeping is synchronized, so lists on different threads can register and use
+ * it. Chunks are compressed after the budget's lock is released, so a slow codec does not hold up
+ * the budget. Compressing a chunk changes the list that owns it though, and lists are not thread
+ * safe, so lists sharing a budget must only be used by one thread at a time, for example by
+ * synchronizing them all on a common lock.
+ *
+ * A registered list that is no longer needed should be unregistered, as the budget refers to the
+ * lists that own its chunks until they are evicted.
+ */
+public class DecompressionBudget {
+
+    private static class Entry {
+        final Object owner;
+        final Consumer<Object> evictor;
+        long bytes;
+
+        Entry(Object owner, Consumer<Object> evictor, long bytes) {
+            this.owner = owner;
+            this.evictor = evictor;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private long usedBytes;
+
+    /** Every decompressed chunk of every registered list, least recently used first. **/
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+
+    /**
+     *
+     * @param maxBytes The most memory that decompressed chunks of all the registered lists can use.
+     * @throws IllegalArgumentException if maxBytes < 1.
+     */
+    public DecompressionBudget(long maxBytes) {
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("The budget must be at least 1 byte");
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The memory used by the decompressed chunks of all the registered lists.
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return The number of decompressed chunks across all the registered lists.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * @return The fraction of accesses to chunks of the registered lists that found them already decompressed.
+     */
+    public synchronized double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : hits / (double)total;
+    }
+
+    /**
+     * Share the budget with a list. A list can only be registered with one budget at a time.
+     * @param list The list.
+     * @throws IllegalArgumentException if the list is already registered with a budget.
+     */
+    public void register(ListOfDouble list) {
+        list.joinBudget(this);
+    }
+
+    public void register(ListOfFloat list) {
+        list.joinBudget(this);
+    }
+
+    public void register(ListOfInt list) {
+        list.joinBudget(this);
+    }
+
+    public void register(ListOfLong list) {
+        list.joinBudget(this);
+    }
+
+    /**
+     * Stop sharing the budget with a list. The list's decompressed chunks stay decompressed, limited by
+     * the list's own limits.
+     * @param list The list.
+     */
+    public void unregister(ListOfDouble list) {
+        list.leaveBudget(this);
+    }
+
+    public void unregister(ListOfFloat list) {
+        list.leaveBudget(this);
+    }
+
+    public void unregister(ListOfInt list) {
+        list.leaveBudget(this);
+    }
+
+    public void unregister(ListOfLong list) {
+        list.leaveBudget(this);
+    }
+
+    /**
+     * A list decompressed a chunk. Chunks are evicted from the least recently used until the budget is
+     * met, other than this chunk.
+     * @param owner The list that owns the chunk.
+     * @param chunk The chunk.
+     * @param bytes The memory used by the decompressed chunk.
+     * @param evictor Compresses the chunk when it is evicted.
+     */
+    void recordMiss(Object owner, Object chunk, long bytes, Consumer<Object> evictor) {
+        evict(added(owner, chunk, bytes, evictor));
+    }
+
+    private synchronized List<Map.Entry<Object, Entry>> added(Object owner, Object chunk, long bytes, Consumer<Object> evictor) {
+        var e = entries.get(chunk);
+        if (e != null)
+            return changed(chunk, bytes);
+
+        misses++;
+        entries.put(chunk, new Entry(owner, evictor, bytes));
+        usedBytes += bytes;
+        return overBudget(chunk);
+    }
+
+    /**
+     * A list read a chunk that is decompressed.
+     */
+    synchronized void recordHit(Object chunk) {
+        if (entries.get(chunk) != null)
+            hits++;
+    }
+
+    /**
+     * The memory used by a decompressed chunk changed.
+     */
+    void resized(Object chunk, long bytes) {
+        evict(changed(chunk, bytes));
+    }
+
+    private synchronized List<Map.Entry<Object, Entry>> changed(Object chunk, long bytes) {
+        var e = entries.get(chunk);
+        if (e == null)
+            return Collections.emptyList();
+        usedBytes += bytes - e.bytes;
+        e.bytes = bytes;
+        return overBudget(chunk);
+    }
+
+    /**
+     * A list compressed one of its chunks, or dropped it.
+     */
+    synchronized void remove(Object chunk) {
+        var e = entries.remove(chunk);
+        if (e != null)
+            usedBytes -= e.bytes;
+    }
+
+    /**
+     * Forget every chunk of a list.
+     */
+    synchronized void removeOwner(Object owner) {
+        var it = entries.values().iterator();
+        while (it.hasNext())
+        {
+            var e = it.next();
+            if (e.owner == owner)
+            {
+                usedBytes -= e.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used chunks until the budget is met.
+     * @param keep A chunk that is in use and must not be compressed.
+     * @return The removed chunks, to be compressed once the lock is released.
+     */
+    private List<Map.Entry<Object, Entry>> overBudget(Object keep) {
+        if (usedBytes <= maxBytes || entries.size() <= 1)
+            return Collections.emptyList();
+
+        var victims = new ArrayList<Map.Entry<Object, Entry>>();
+        while (usedBytes > maxBytes && entries.size() > 1)
+        {
+            var it = entries.entrySet().iterator();
+            var eldest = it.next();
+            if (eldest.getKey() == keep)
+                eldest = it.next();
+
+            var e = eldest.getValue();
+            victims.add(Map.entry(eldest.getKey(), e));
+            entries.remove(eldest.getKey());
+            usedBytes -= e.bytes;
+        }
+        return victims;
+    }
+
+    /**
+     * Compress chunks removed by overBudget. This is called without holding the lock, so evictors
+     * of slow codecs don't block the other lists, and an evictor can use the budget itself.
+     */
+    private static void evict(List<Map.Entry<Object, Entry>> victims) {
+        for (var v : victims)
+            v.getValue().evictor.accept(v.getKey());
+    }
+}
@@ -0,0 +1,244 @@
+package memorypalace;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Shares one compressed array between chunks with identical contents. Each chunk is compressed by
+ * another codec, and the compressed bytes are looked up by a hash of their contents. If an equal
+ * array is already held by a chunk, that array is returned in place of the new one, so repeated
+ * blocks of data cost the memory of a single compressed chunk.
+ *
+ * Lists never write to a compressed array, a chunk that is changed drops its compressed form and is
+ * compressed again later, so a shared array is effectively copy on write. Arrays are only weakly
+ * held here, they are forgotten once no chunk uses them.
+ */
+public class DedupCodec implements DoubleCodec, FloatCodec, IntCodec, LongCodec {
+
+    private final ChunkCodec codec;
+
+    /** Compressed arrays in use by chunks, by the hash of their contents. **/
+    private final HashMap<Integer, ArrayList<Entry>> shared = new HashMap<>();
+    private final ReferenceQueue<byte[]> collected = new ReferenceQueue<>();
+
+    private long hits;
+    private long savedBytes;
+
+    private static class Entry extends WeakReference<byte[]> {
+        final int hash;
+
+        Entry(byte[] compressed, int hash, ReferenceQueue<byte[]> queue) {
+            super(compressed, queue);
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Share chunks compressed with deflate.
+     */
+    public DedupCodec() {
+        this(new DeflateCodec());
+    }
+
+    /**
+     *
+     * @param codec The codec that compresses the chunks. It must support the type of the list.
+     * @throws IllegalArgumentException if codec is null.
+     */
+    public DedupCodec(ChunkCodec codec) {
+        if (codec == null)
+            throw new IllegalArgumentException("A codec is required");
+        this.codec = codec;
+    }
+
+    @Override
+    public String name() {
+        return "Dedup+" + codec.name();
+    }
+
+    @Override
+    public boolean supportsGet() {
+        return codec.supportsGet();
+    }
+
+    @Override
+    public boolean supportsIndexOf() {
+        return codec.supportsIndexOf();
+    }
+
+    @Override
+    public boolean readsTrailingTag() {
+        return codec.readsTrailingTag();
+    }
+
+    @Override
+    public void copied(byte[] compressed, byte[] copy) {
+        codec.copied(compressed, copy);
+    }
+
+    /**
+     * @return The number of chunks that were given an array already held by another chunk.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The total size of the compressed arrays that were replaced by a shared one.
+     */
+    public long savedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * @return The number of distinct compressed arrays currently held by chunks.
+     */
+    public int distinctCount() {
+        purge();
+        int ret = 0;
+        for (var entries : shared.values())
+            ret += entries.size();
+        return ret;
+    }
+
+    /**
+     * Return an array already in use with the same contents as compressed, or remember compressed
+     * for later chunks if there isn't one.
+     */
+    private byte[] share(byte[] compressed) {
+        purge();
+        int hash = Arrays.hashCode(compressed);
+        var entries = shared.computeIfAbsent(hash, h -> new ArrayList<>(1));
+        for (var e : entries)
+        {
+            var existing = e.get();
+            if (existing != null && Arrays.equals(existing, compressed))
+            {
+                hits++;
+                savedBytes += compressed.length;
+                return existing;
+            }
+        }
+        entries.add(new Entry(compressed, hash, collected));
+        return compressed;
+    }
+
+    /**
+     * Forget arrays that are no longer used by any chunk.
+     */
+    private void purge() {
+        Entry e;
+        while ((e = (Entry)collected.poll()) != null)
+        {
+            var entries = shared.get(e.hash);
+            if (entries == null)
+                continue;
+            entries.remove(e);
+            if (entries.isEmpty())
+                shared.remove(e.hash);
+        }
+    }
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        return share(((DoubleCodec)codec).compress(values, count));
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        ((DoubleCodec)codec).decompress(compressed, values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int offset, int count) {
+        ((DoubleCodec)codec).decompress(compressed, values, offset, count);
+    }
+
+    @Override
+    public double getDouble(byte[] compressed, int count, int idx) {
+        return ((DoubleCodec)codec).getDouble(compressed, count, idx);
+    }
+
+    @Override
+    public int indexOfDouble(byte[] compressed, int count, double v) {
+        return ((DoubleCodec)codec).indexOfDouble(compressed, count, v);
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        return share(((FloatCodec)codec).compress(values, count));
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        ((FloatCodec)codec).decompress(compressed, values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int offset, int count) {
+        ((FloatCodec)codec).decompress(compressed, values, offset, count);
+    }
+
+    @Override
+    public float getFloat(byte[] compressed, int count, int idx) {
+        return ((FloatCodec)codec).getFloat(compressed, count, idx);
+    }
+
+    @Override
+    public int indexOfFloat(byte[] compressed, int count, float v) {
+        return ((FloatCodec)codec).indexOfFloat(compressed, count, v);
+    }
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        return share(((IntCodec)codec).compress(values, count));
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        ((IntCodec)codec).decompress(compressed, values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int offset, int count) {
+        ((IntCodec)codec).decompress(compressed, values, offset, count);
+    }
+
+    @Override
+    public int getInt(byte[] compressed, int count, int idx) {
+        return ((IntCodec)codec).getInt(compressed, count, idx);
+    }
+
+    @Override
+    public int indexOfInt(byte[] compressed, int count, int v) {
+        return ((IntCodec)codec).indexOfInt(compressed, count, v);
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        return share(((LongCodec)codec).compress(values, count));
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        ((LongCodec)codec).decompress(compressed, values, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int offset, int count) {
+        ((LongCodec)codec).decompress(compressed, values, offset, count);
+    }
+
+    @Override
+    public long getLong(byte[] compressed, int count, int idx) {
+        return ((LongCodec)codec).getLong(compressed, count, idx);
+    }
+
+    @Override
+    public int indexOfLong(byte[] compressed, int count, long v) {
+        return ((LongCodec)codec).indexOfLong(compressed, count, v);
+    }
+}
@@ -0,0 +1,287 @@
+package memorypalace;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses chunks using the deflate algorithm that is standard to ZIP files. This is the codec
+ * used by the lists when no other codec is given.
+ *
+ * The compression level and strategy can be chosen to favour speed, for lists that are written
+ * often, or ratio, for lists that are mostly archived.
+ *
+ * A single Deflater and Inflater are kept and reset between chunks, along with a scratch output
+ * buffer, so the only allocation made when compressing is the returned byte array.
+ *
+ * Small chunks compress poorly on their own because deflate has no history to refer back to. The
+ * codec can be given a preset dictionary, or asked to train one from the first chunks it compresses,
+ * which is then used for every chunk after that. Deflate identifies the dictionary a chunk needs by
+ * its Adler-32 checksum, so a dictionary is remembered while any chunk compressed with it is still
+ * held, and chunks compressed before a dictionary changed can still be decompressed. Compressed
+ * arrays are only weakly held to do this. A new dictionary with the same checksum as one that is
+ * still needed can't be told apart from it, and is refused.
+ */
+public class DeflateCodec extends ByteCodec {
+
+    /** The largest dictionary deflate is able to make use of. **/
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater();
+
+    /** Scratch space that compressed data is written to before it is copied to a right sized array. **/
+    private byte[] output = new byte[0];
+
+    /** The dictionary used for new chunks and its checksum, or null. **/
+    private byte[] dictionary = null;
+    private int dictionaryAdler;
+    /** All dictionaries that chunks may have been compressed with, by Adler-32 checksum. **/
+    private final Map<Integer, byte[]> dictionaries = new HashMap<>();
+    /** The checksum of the dictionary used by each compressed array that used one. **/
+    private final WeakHashMap<byte[], Integer> dictionaryUsers = new WeakHashMap<>();
+
+    /** Chunks collected to train a dictionary from, and how many to collect. **/
+    private final List<byte[]> samples = new ArrayList<>();
+    private int trainingChunks = 0;
+    private int trainingSize = 0;
+
+    /**
+     * Use the default compression level and strategy.
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     *
+     * @param level The compression level, from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION, or
+     *              Deflater.DEFAULT_COMPRESSION.
+     * @throws IllegalArgumentException if the level is not valid.
+     */
+    public DeflateCodec(int level) {
+        this(level, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     *
+     * @param level The compression level, from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION, or
+     *              Deflater.DEFAULT_COMPRESSION.
+     * @param strategy Deflater.DEFAULT_STRATEGY, Deflater.FILTERED or Deflater.HUFFMAN_ONLY.
+     * @throws IllegalArgumentException if the level or strategy is not valid.
+     */
+    public DeflateCodec(int level, int strategy) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        if (strategy != Deflater.DEFAULT_STRATEGY && strategy != Deflater.FILTERED && strategy != Deflater.HUFFMAN_ONLY)
+            throw new IllegalArgumentException("Invalid compression strategy " + strategy);
+
+        deflater = new Deflater(level);
+        deflater.setStrategy(strategy);
+    }
+
+    /**
+     * Use a preset dictionary for all chunks compressed from now on.
+     * @param dictionary The dictionary, or null to stop using one.
+     * @throws IllegalArgumentException if the dictionary is larger than MAX_DICTIONARY_SIZE, or has
+     *                                  the same Adler-32 checksum as a different dictionary that chunks
+     *                                  still need.
+     */
+    public void setDictionary(byte[] dictionary) {
+        if (dictionary != null && dictionary.length > MAX_DICTIONARY_SIZE)
+            throw new IllegalArgumentException("A dictionary can be at most " + MAX_DICTIONARY_SIZE + " bytes");
+        if (!useDictionary(dictionary))
+            throw new IllegalArgumentException("The dictionary has the same Adler-32 checksum as a dictionary that is still in use");
+    }
+
+    /**
+     * @return The dictionary used for new chunks, or null if there isn't one.
+     */
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Build a dictionary from the next chunks that are compressed, and use it for all chunks after
+     * those. Chunks that are compressed while samples are being collected do not use a dictionary.
+     * @param sampleChunks The number of chunks to sample.
+     * @param dictionarySize The size of the dictionary to build.
+     * @return This codec.
+     * @throws IllegalArgumentException if sampleChunks < 1 or dictionarySize is not (0, MAX_DICTIONARY_SIZE]
+     */
+    public DeflateCodec trainDictionary(int sampleChunks, int dictionarySize) {
+        if (sampleChunks < 1)
+            throw new IllegalArgumentException("At least one chunk must be sampled");
+        if (dictionarySize < 1 || dictionarySize > MAX_DICTIONARY_SIZE)
+            throw new IllegalArgumentException("Dictionary size must be (0, " + MAX_DICTIONARY_SIZE + "]");
+
+        samples.clear();
+        trainingChunks = sampleChunks;
+        trainingSize = dictionarySize;
+        return this;
+    }
+
+    @Override
+    protected byte[] encode(byte[] raw, int length, int width) {
+        if (trainingChunks > 0)
+            sample(raw, length, width);
+
+        // deflate adds at most a few bytes per 16K block plus a small header and trailer
+        int bound = length + (length >> 12) + (length >> 14) + 64;
+        if (output.length < bound)
+            output = new byte[bound];
+
+        deflater.reset();
+        if (dictionary != null)
+            deflater.setDictionary(dictionary);
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+
+        int written = 0;
+        while (!deflater.finished())
+        {
+            if (written == output.length)
+                output = Arrays.copyOf(output, output.length * 2);
+            written += deflater.deflate(output, written, output.length - written);
+        }
+
+        var ret = Arrays.copyOf(output, written);
+        if (dictionary != null)
+            dictionaryUsers.put(ret, dictionaryAdler);
+        return ret;
+    }
+
+    @Override
+    public void copied(byte[] compressed, byte[] copy) {
+        var adler = dictionaryUsers.get(compressed);
+        if (adler != null)
+            dictionaryUsers.put(copy, adler);
+    }
+
+    @Override
+    protected void decode(byte[] compressed, byte[] raw, int length, int width) {
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        try
+        {
+            int offset = 0;
+            while (length != offset)
+            {
+                int read = inflater.inflate(raw, offset, length - offset);
+                if (read == 0 && inflater.needsDictionary())
+                {
+                    var dict = dictionaries.get(inflater.getAdler());
+                    if (dict == null)
+                        throw new DataFormatException("Chunk was compressed with an unknown dictionary");
+                    inflater.setDictionary(dict);
+                }
+                else if (read == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new DataFormatException("Compressed data ended after " + offset + " of " + length + " bytes");
+                offset += read;
+            }
+        }
+        catch (DataFormatException ex)
+        {
+            throw new IllegalStateException("Could not decompress chunk: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Keep a chunk for training, and build the dictionary once enough chunks have been seen.
+     */
+    private void sample(byte[] raw, int length, int width) {
+        samples.add(Arrays.copyOf(raw, length));
+        if (samples.size() < trainingChunks)
+            return;
+
+        // a dictionary that can't be used because of a checksum collision leaves the current one
+        var dict = buildDictionary(samples, trainingSize, width);
+        useDictionary(dict.length == 0 ? null : dict);
+        samples.clear();
+        trainingChunks = 0;
+    }
+
+    /**
+     * Switch to a dictionary for new chunks, and forget the dictionaries no compressed chunk uses.
+     * @return false if the dictionary could not be used because a different dictionary with the same
+     *         checksum is still in use.
+     */
+    private boolean useDictionary(byte[] dict) {
+        var used = new HashSet<>(dictionaryUsers.values());
+        int checksum = 0;
+        if (dict != null)
+        {
+            var adler = new Adler32();
+            adler.update(dict);
+            checksum = (int)adler.getValue();
+            var held = dictionaries.get(checksum);
+            if (held != null && used.contains(checksum) && !Arrays.equals(held, dict))
+                return false;
+        }
+
+        dictionaries.keySet().retainAll(used);
+        if (dict != null)
+            dictionaries.put(checksum, dict);
+        this.dictionary = dict;
+        dictionaryAdler = checksum;
+        return true;
+    }
+
+    /**
+     * Number of dictionaries being kept for chunks to be decompressed with.
+     */
+    int dictionaryCount() {
+        return dictionaries.size();
+    }
+
+    /**
+     * Build a dictionary from sample chunks. Runs of a few values that repeat across the samples are
+     * the most useful content, so the most frequent runs are taken first. Deflate finds matches near
+     * the end of the dictionary most cheaply, so the most frequent runs are placed last. Any space that
+     * is left is filled from the end of the last sample.
+     * @param samples The raw bytes of the sampled chunks.
+     * @param size The largest size of the dictionary.
+     * @param width The number of bytes in each value.
+     * @return The dictionary.
+     */
+    static byte[] buildDictionary(List<byte[]> samples, int size, int width) {
+        int segment = width * 4;
+        var counts = new HashMap<String, Integer>();
+        for (byte[] sample : samples)
+            for (int n = 0; n + segment <= sample.length; n += width)
+                counts.merge(new String(sample, n, segment, StandardCharsets.ISO_8859_1), 1, Integer::sum);
+
+        var frequent = new ArrayList<Map.Entry<String, Integer>>();
+        for (var e : counts.entrySet())
+            if (e.getValue() > 1)
+                frequent.add(e);
+        frequent.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        // most frequent segments first, these end up at the end of the dictionary
+        var chosen = new ArrayList<byte[]>();
+        int used = 0;
+        for (var e : frequent)
+        {
+            if (used + segment > size)
+                break;
+            chosen.add(e.getKey().getBytes(StandardCharsets.ISO_8859_1));
+            used += segment;
+        }
+
+        var last = samples.get(samples.size() - 1);
+        int fill = Math.min(size - used, last.length);
+        var ret = new byte[used + fill];
+        System.arraycopy(last, last.length - fill, ret, 0, fill);
+        int pos = ret.length;
+        for (byte[] c : chosen)
+        {
+            pos -= c.length;
+            System.arraycopy(c, 0, ret, pos, c.length);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,106 @@
+package memorypalace;
+
+import java.util.Arrays;
+
+/**
+ * Compresses integer chunks by storing the difference between neighbouring values. The differences
+ * are zig-zag encoded so that small negative steps stay small, then written as variable length
+ * integers using 7 bits per byte. Monotonic or slowly changing data such as timestamps, IDs and
+ * offsets typically needs only one or two bytes per value.
+ */
+public class DeltaCodec implements IntCodec, LongCodec {
+
+    /** Scratch space that values are encoded to before being copied to a right sized array. **/
+    private byte[] output = new byte[0];
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        ensureOutput(count * 5);
+
+        int pos = 0;
+        int prev = 0;
+        for (int n = 0; n < count; ++n)
+        {
+            int delta = values[n] - prev;
+            prev = values[n];
+            int zz = (delta << 1) ^ (delta >> 31);
+            while ((zz & ~0x7F) != 0)
+            {
+                output[pos++] = (byte)((zz & 0x7F) | 0x80);
+                zz >>>= 7;
+            }
+            output[pos++] = (byte)zz;
+        }
+
+        return Arrays.copyOf(output, pos);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        int pos = 0;
+        int prev = 0;
+        for (int n = 0; n < count; ++n)
+        {
+            int zz = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = compressed[pos++];
+                zz |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            prev += (zz >>> 1) ^ -(zz & 1);
+            values[n] = prev;
+        }
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        ensureOutput(count * 10);
+
+        int pos = 0;
+        long prev = 0;
+        for (int n = 0; n < count; ++n)
+        {
+            long delta = values[n] - prev;
+            prev = values[n];
+            long zz = (delta << 1) ^ (delta >> 63);
+            while ((zz & ~0x7FL) != 0)
+            {
+                output[pos++] = (byte)((zz & 0x7F) | 0x80);
+                zz >>>= 7;
+            }
+            output[pos++] = (byte)zz;
+        }
+
+        return Arrays.copyOf(output, pos);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        int pos = 0;
+        long prev = 0;
+        for (int n = 0; n < count; ++n)
+        {
+            long zz = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = compressed[pos++];
+                zz |= (b & 0x7FL) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            prev += (zz >>> 1) ^ -(zz & 1);
+            values[n] = prev;
+        }
+    }
+
+    private void ensureOutput(int size) {
+        if (output.length < size)
+            output = new byte[size];
+    }
+}
@@ -0,0 +1,276 @@
+package memorypalace;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Dictionary encoding for chunks that only hold a few distinct values, such as category IDs or
+ * price ticks. The compressed data is a sorted table of the distinct values followed by one code per
+ * value, bit packed to the fewest bits that can index the table.
+ *
+ * Single values are read by decoding just their code, and a search for a value first looks it up in
+ * the table. If it is not there the chunk is skipped, otherwise only the codes are compared.
+ *
+ * Floating point values are stored by their bits, so NaN and negative zero are kept exactly.
+ */
+public class DictionaryCodec implements DoubleCodec, FloatCodec, IntCodec, LongCodec {
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** The table size and code width come before the table. **/
+    private static final int HEADER = Integer.BYTES + 1;
+
+    private final BitReader reader = new BitReader();
+
+    /** Scratch space for the value bits, the distinct values, and which codes match a search. **/
+    private long[] bits = new long[0];
+    private long[] table = new long[0];
+    private boolean[] matches = new boolean[0];
+
+    @Override
+    public boolean supportsGet() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsIndexOf() {
+        return true;
+    }
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        ensureScratch(count);
+        for (int n = 0; n < count; ++n)
+            bits[n] = Double.doubleToRawLongBits(values[n]);
+        return encode(count, Long.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int offset, int count) {
+        int codeBits = startCodes(compressed, Long.BYTES);
+        for (int n = offset; n < offset + count; ++n)
+            values[n] = Double.longBitsToDouble(table[(int)reader.read(codeBits)]);
+    }
+
+    @Override
+    public double getDouble(byte[] compressed, int count, int idx) {
+        return Double.longBitsToDouble(valueAt(compressed, idx, Long.BYTES));
+    }
+
+    @Override
+    public int indexOfDouble(byte[] compressed, int count, double v) {
+        long find = Double.doubleToLongBits(v);
+        return indexOf(compressed, count, Long.BYTES, b -> Double.doubleToLongBits(Double.longBitsToDouble(b)) == find);
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        ensureScratch(count);
+        for (int n = 0; n < count; ++n)
+            bits[n] = Float.floatToRawIntBits(values[n]);
+        return encode(count, Integer.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int offset, int count) {
+        int codeBits = startCodes(compressed, Integer.BYTES);
+        for (int n = offset; n < offset + count; ++n)
+            values[n] = Float.intBitsToFloat((int)table[(int)reader.read(codeBits)]);
+    }
+
+    @Override
+    public float getFloat(byte[] compressed, int count, int idx) {
+        return Float.intBitsToFloat((int)valueAt(compressed, idx, Integer.BYTES));
+    }
+
+    @Override
+    public int indexOfFloat(byte[] compressed, int count, float v) {
+        int find = Float.floatToIntBits(v);
+        return indexOf(compressed, count, Integer.BYTES, b -> Float.floatToIntBits(Float.intBitsToFloat((int)b)) == find);
+    }
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        ensureScratch(count);
+        for (int n = 0; n < count; ++n)
+            bits[n] = values[n];
+        return encode(count, Integer.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int offset, int count) {
+        int codeBits = startCodes(compressed, Integer.BYTES);
+        for (int n = offset; n < offset + count; ++n)
+            values[n] = (int)table[(int)reader.read(codeBits)];
+    }
+
+    @Override
+    public int getInt(byte[] compressed, int count, int idx) {
+        return (int)valueAt(compressed, idx, Integer.BYTES);
+    }
+
+    @Override
+    public int indexOfInt(byte[] compressed, int count, int v) {
+        return indexOf(compressed, count, Integer.BYTES, b -> b == v);
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        ensureScratch(count);
+        System.arraycopy(values, 0, bits, 0, count);
+        return encode(count, Long.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int offset, int count) {
+        int codeBits = startCodes(compressed, Long.BYTES);
+        for (int n = offset; n < offset + count; ++n)
+            values[n] = table[(int)reader.read(codeBits)];
+    }
+
+    @Override
+    public long getLong(byte[] compressed, int count, int idx) {
+        return valueAt(compressed, idx, Long.BYTES);
+    }
+
+    @Override
+    public int indexOfLong(byte[] compressed, int count, long v) {
+        return indexOf(compressed, count, Long.BYTES, b -> b == v);
+    }
+
+    private void ensureScratch(int count) {
+        if (bits.length < count)
+        {
+            bits = new long[count];
+            table = new long[count];
+        }
+    }
+
+    /**
+     * Build the table and codes for the values held in bits.
+     */
+    private byte[] encode(int count, int width) {
+        System.arraycopy(bits, 0, table, 0, count);
+        Arrays.sort(table, 0, count);
+        int size = 0;
+        for (int n = 0; n < count; ++n)
+            if (size == 0 || table[size - 1] != table[n])
+                table[size++] = table[n];
+
+        int codeBits = size <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        int pos = HEADER + size * width;
+        var ret = new byte[pos + (int)(((long)count * codeBits + 7) >>> 3)];
+        INTS.set(ret, 0, size);
+        ret[Integer.BYTES] = (byte)codeBits;
+        for (int n = 0; n < size; ++n)
+            setValue(ret, n, width, table[n]);
+
+        long pending = 0;
+        int pendingBits = 0;
+        for (int n = 0; n < count; ++n)
+        {
+            pending = (pending << codeBits) | Arrays.binarySearch(table, 0, size, bits[n]);
+            pendingBits += codeBits;
+            while (pendingBits >= 8)
+            {
+                pendingBits -= 8;
+                ret[pos++] = (byte)(pending >>> pendingBits);
+            }
+        }
+        if (pendingBits > 0)
+            ret[pos] = (byte)(pending << (8 - pendingBits));
+
+        return ret;
+    }
+
+    /**
+     * Load the table and position the reader at the first code.
+     * @return The number of bits in each code.
+     */
+    private int startCodes(byte[] compressed, int width) {
+        int size = (int)INTS.get(compressed, 0);
+        if (table.length < size)
+            table = new long[size];
+        for (int n = 0; n < size; ++n)
+            table[n] = value(compressed, n, width);
+
+        reader.reset(compressed, HEADER + size * width);
+        return compressed[Integer.BYTES];
+    }
+
+    private int indexOf(byte[] compressed, int count, int width, LongPredicate equal) {
+        int size = (int)INTS.get(compressed, 0);
+        if (matches.length < size)
+            matches = new boolean[size];
+
+        boolean any = false;
+        for (int n = 0; n < size; ++n)
+        {
+            matches[n] = equal.test(value(compressed, n, width));
+            any |= matches[n];
+        }
+        if (!any)
+            return -1;
+
+        int codeBits = compressed[Integer.BYTES];
+        reader.reset(compressed, HEADER + size * width);
+        for (int n = 0; n < count; ++n)
+            if (matches[(int)reader.read(codeBits)])
+                return n;
+        return -1;
+    }
+
+    /**
+     * Read the value at an index by decoding only its code.
+     */
+    private static long valueAt(byte[] compressed, int idx, int width) {
+        int size = (int)INTS.get(compressed, 0);
+        int codeBits = compressed[Integer.BYTES];
+        long bitPos = (long)idx * codeBits;
+        int pos = HEADER + size * width + (int)(bitPos >>> 3);
+        int need = (int)(bitPos & 7) + codeBits;
+
+        long word = 0;
+        for (int n = 0; n < (need + 7) >>> 3; ++n)
+            word = (word << 8) | (compressed[pos + n] & 0xFF);
+        int code = (int)((word >>> (((need + 7) & ~7) - need)) & ((1L << codeBits) - 1));
+        return value(compressed, code, width);
+    }
+
+    private static long value(byte[] compressed, int code, int width) {
+        int pos = HEADER + code * width;
+        return width == Long.BYTES ? (long)LONGS.get(compressed, pos) : (int)INTS.get(compressed, pos);
+    }
+
+    private static void setValue(byte[] compressed, int code, int width, long v) {
+        int pos = HEADER + code * width;
+        if (width == Long.BYTES)
+            LONGS.set(compressed, pos, v);
+        else
+            INTS.set(compressed, pos, (int)v);
+    }
+}
@@ -0,0 +1,67 @@
+package memorypalace;
+
+/**
+ * A codec that is able to compress the contents of a ListOfDouble chunk.
+ */
+public interface DoubleCodec extends ChunkCodec {
+
+    /**
+     * Compress the first count values of the given array.
+     * @param values The values to compress.
+     * @param count The number of values to compress.
+     * @return The compressed values.
+     */
+    byte[] compress(double[] values, int count);
+
+    /**
+     * Decompress data created by compress into the given array.
+     * @param compressed The data that was returned by compress.
+     * @param values The array to fill, this must hold at least count values.
+     * @param count The number of values that were compressed.
+     */
+    void decompress(byte[] compressed, double[] values, int count);
+
+    /**
+     * Decompress data created by compress into part of the given array. Lists use this to decompress
+     * straight into the array being filled by toArray. The default decompresses into a temporary
+     * array and copies it, codecs that can write into values at an offset should override it.
+     * @param compressed The data that was returned by compress.
+     * @param values The array to fill, this must hold at least offset + count values.
+     * @param offset The index in values of the first value.
+     * @param count The number of values that were compressed.
+     */
+    default void decompress(byte[] compressed, double[] values, int offset, int count) {
+        if (offset == 0)
+        {
+            decompress(compressed, values, count);
+            return;
+        }
+
+        var tmp = new double[count];
+        decompress(compressed, tmp, count);
+        System.arraycopy(tmp, 0, values, offset, count);
+    }
+
+    /**
+     * Read one value from compressed data. Only used when supportsGet returns true.
+     * @param compressed The data that was returned by compress.
+     * @param count The number of values that were compressed.
+     * @param idx The index of the value to read.
+     * @return The value at idx.
+     */
+    default double getDouble(byte[] compressed, int count, int idx) {
+        throw new UnsupportedOperationException(name() + " cannot read single values");
+    }
+
+    /**
+     * Find the first index of a value in compressed data. Only used when supportsIndexOf returns true.
+     * Values are equal when their Double.doubleToLongBits values are equal, as for Double.equals.
+     * @param compressed The data that was returned by compress.
+     * @param count The number of values that were compressed.
+     * @param v The value to find.
+     * @return The index of the first value equal to v, or -1 if there isn't one.
+     */
+    default int indexOfDouble(byte[] compressed, int count, double v) {
+        throw new UnsupportedOperationException(name() + " cannot search compressed data");
+    }
+}
@@ -0,0 +1,102 @@
+package memorypalace;
+
+/**
+ * Decides which decompressed chunk of a list is compressed when too many chunks are decompressed.
+ * The list tells the policy about every chunk it decompresses and every read of a chunk that is
+ * already decompressed, and asks it for a chunk to evict once more than the allowed decompressed
+ * count are held.
+ *
+ * A policy instance keeps track of the chunks of one list, so each list needs its own. Policies
+ * count hits and misses so that they can be compared on real workloads.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called by the list when it is built.
+     * @param capacity The number of chunks the list keeps decompressed.
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * A chunk that is held decompressed was read. Chunks the policy is not holding are ignored.
+     * @param key The chunk.
+     */
+    void recordHit(Object key);
+
+    /**
+     * A chunk was decompressed and is now held by the policy.
+     * @param key The chunk.
+     */
+    void recordMiss(Object key);
+
+    /**
+     * Choose a chunk to compress and stop holding it. The chunk most recently passed to recordMiss
+     * is never chosen while the policy holds another chunk.
+     * @return The chunk to compress.
+     * @throws java.util.NoSuchElementException if no chunks are held.
+     */
+    Object evict();
+
+    /**
+     * Stop holding a chunk without it being evicted, because it is no longer part of the list.
+     * @param key The chunk.
+     */
+    void remove(Object key);
+
+    /**
+     * Stop holding every chunk. The hit and miss counts are kept.
+     */
+    void clear();
+
+    /**
+     * @return The number of chunks held.
+     */
+    int size();
+
+    long hitCount();
+
+    long missCount();
+
+    /**
+     * @return The fraction of accesses to chunks that found them already decompressed.
+     */
+    default double hitRatio() {
+        long total = hitCount() + missCount();
+        return total == 0 ? 0 : hitCount() / (double)total;
+    }
+
+    /**
+     * @return A policy that evicts the least recently used chunk. The default.
+     */
+    static EvictionPolicy lru() {
+        return new LruPolicy();
+    }
+
+    /**
+     * @return A policy that evicts with the CLOCK, or second chance, algorithm.
+     */
+    static EvictionPolicy clock() {
+        return new ClockPolicy();
+    }
+
+    /**
+     * @return A policy that evicts the least frequently used chunk.
+     */
+    static EvictionPolicy lfu() {
+        return new LfuPolicy();
+    }
+
+    /**
+     * @return A policy that evicts with the Adaptive Replacement Cache algorithm.
+     */
+    static EvictionPolicy arc() {
+        return new ArcPolicy();
+    }
+
+    /**
+     * @return A policy that evicts with the W-TinyLFU algorithm.
+     */
+    static EvictionPolicy tinyLfu() {
+        return new TinyLfuPolicy();
+    }
+}
@@ -0,0 +1,204 @@
+package memorypalace;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compresses integer chunks with a narrow range of values. The chunk minimum is subtracted from every
+ * value and the results are bit packed in blocks of 128 values, each block using the fewest bits that
+ * hold its largest value.
+ *
+ * Blocks are packed in interleaved lanes, as in SIMD-BP128: value i of a block goes to lane i % 4 for
+ * ints (i % 2 for longs) and every lane is packed independently. Unpacking a block is then a fixed
+ * sequence of shift and mask steps with no data dependent branches, the same for every lane, which
+ * the JIT is able to unroll and vectorize.
+ */
+public class FrameOfReferenceCodec implements IntCodec, LongCodec {
+
+    /** The number of values packed together with one bit width. **/
+    static final int BLOCK_SIZE = 128;
+
+    private static final int INT_LANES = 4;
+    private static final int LONG_LANES = 2;
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** Scratch space for the compressed form, packed words and a partial last block. **/
+    private byte[] output = new byte[0];
+    private final int[] intWords = new int[Integer.SIZE * INT_LANES + INT_LANES];
+    private final long[] longWords = new long[Long.SIZE * LONG_LANES + LONG_LANES];
+    private final int[] intBlock = new int[BLOCK_SIZE];
+    private final long[] longBlock = new long[BLOCK_SIZE];
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ensureOutput(Integer.BYTES + blocks * (1 + BLOCK_SIZE * Integer.BYTES));
+
+        int min = Integer.MAX_VALUE;
+        for (int n = 0; n < count; ++n)
+            min = Math.min(min, values[n]);
+
+        INTS.set(output, 0, min);
+        int pos = Integer.BYTES;
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int end = Math.min(start + BLOCK_SIZE, count);
+            int bits = 0;
+            for (int n = start; n < end; ++n)
+                bits |= values[n] - min;
+            int width = Integer.SIZE - Integer.numberOfLeadingZeros(bits);
+
+            Arrays.fill(intWords, 0);
+            for (int n = start; n < end; ++n)
+            {
+                int v = values[n] - min;
+                int i = n - start;
+                int bit = (i / INT_LANES) * width;
+                int word = (bit >>> 5) * INT_LANES + i % INT_LANES;
+                int shift = bit & 31;
+                intWords[word] |= v << shift;
+                if (shift + width > Integer.SIZE)
+                    intWords[word + INT_LANES] |= v >>> (Integer.SIZE - shift);
+            }
+
+            output[pos++] = (byte)width;
+            for (int n = 0; n < width * INT_LANES; ++n, pos += Integer.BYTES)
+                INTS.set(output, pos, intWords[n]);
+        }
+
+        return Arrays.copyOf(output, pos);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        int min = (int)INTS.get(compressed, 0);
+        int pos = Integer.BYTES;
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int width = compressed[pos++];
+            int wordCount = width * INT_LANES;
+            for (int n = 0; n < wordCount; ++n, pos += Integer.BYTES)
+                intWords[n] = (int)INTS.get(compressed, pos);
+            Arrays.fill(intWords, wordCount, wordCount + INT_LANES, 0);
+
+            if (count - start >= BLOCK_SIZE)
+                unpack(width, min, values, start);
+            else
+            {
+                unpack(width, min, intBlock, 0);
+                System.arraycopy(intBlock, 0, values, start, count - start);
+            }
+        }
+    }
+
+    /**
+     * Unpack the block held in intWords.
+     */
+    private void unpack(int width, int min, int[] dest, int offset) {
+        int mask = width == Integer.SIZE ? -1 : (1 << width) - 1;
+        for (int p = 0; p < BLOCK_SIZE / INT_LANES; ++p)
+        {
+            int bit = p * width;
+            int word = (bit >>> 5) * INT_LANES;
+            int shift = bit & 31;
+            int out = offset + p * INT_LANES;
+            for (int lane = 0; lane < INT_LANES; ++lane)
+            {
+                int lo = intWords[word + lane];
+                int hi = intWords[word + INT_LANES + lane];
+                dest[out + lane] = min + (((lo >>> shift) | ((hi << 1) << (31 - shift))) & mask);
+            }
+        }
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ensureOutput(Long.BYTES + blocks * (1 + BLOCK_SIZE * Long.BYTES));
+
+        long min = Long.MAX_VALUE;
+        for (int n = 0; n < count; ++n)
+            min = Math.min(min, values[n]);
+
+        LONGS.set(output, 0, min);
+        int pos = Long.BYTES;
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int end = Math.min(start + BLOCK_SIZE, count);
+            long bits = 0;
+            for (int n = start; n < end; ++n)
+                bits |= values[n] - min;
+            int width = Long.SIZE - Long.numberOfLeadingZeros(bits);
+
+            Arrays.fill(longWords, 0);
+            for (int n = start; n < end; ++n)
+            {
+                long v = values[n] - min;
+                int i = n - start;
+                int bit = (i / LONG_LANES) * width;
+                int word = (bit >>> 6) * LONG_LANES + i % LONG_LANES;
+                int shift = bit & 63;
+                longWords[word] |= v << shift;
+                if (shift + width > Long.SIZE)
+                    longWords[word + LONG_LANES] |= v >>> (Long.SIZE - shift);
+            }
+
+            output[pos++] = (byte)width;
+            for (int n = 0; n < width * LONG_LANES; ++n, pos += Long.BYTES)
+                LONGS.set(output, pos, longWords[n]);
+        }
+
+        return Arrays.copyOf(output, pos);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        long min = (long)LONGS.get(compressed, 0);
+        int pos = Long.BYTES;
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int width = compressed[pos++];
+            int wordCount = width * LONG_LANES;
+            for (int n = 0; n < wordCount; ++n, pos += Long.BYTES)
+                longWords[n] = (long)LONGS.get(compressed, pos);
+            Arrays.fill(longWords, wordCount, wordCount + LONG_LANES, 0);
+
+            if (count - start >= BLOCK_SIZE)
+                unpack(width, min, values, start);
+            else
+            {
+                unpack(width, min, longBlock, 0);
+                System.arraycopy(longBlock, 0, values, start, count - start);
+            }
+        }
+    }
+
+    /**
+     * Unpack the block held in longWords.
+     */
+    private void unpack(int width, long min, long[] dest, int offset) {
+        long mask = width == Long.SIZE ? -1L : (1L << width) - 1;
+        for (int p = 0; p < BLOCK_SIZE / LONG_LANES; ++p)
+        {
+            int bit = p * width;
+            int word = (bit >>> 6) * LONG_LANES;
+            int shift = bit & 63;
+            int out = offset + p * LONG_LANES;
+            for (int lane = 0; lane < LONG_LANES; ++lane)
+            {
+                long lo = longWords[word + lane];
+                long hi = longWords[word + LONG_LANES + lane];
+                dest[out + lane] = min + (((lo >>> shift) | ((hi << 1) << (63 - shift))) & mask);
+            }
+        }
+    }
+
+    private void ensureOutput(int size) {
+        if (output.length < size)
+            output = new byte[size];
+    }
+}
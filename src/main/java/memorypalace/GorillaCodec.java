@@ -0,0 +1,161 @@
+package memorypalace;
+
+/**
+ * Compresses floating point chunks using the XOR scheme from Facebook's Gorilla time series database.
+ * Each value is XORed with the previous one. An identical value costs a single bit, otherwise only
+ * the meaningful bits between the leading and trailing zero runs of the XOR are stored. When the
+ * meaningful bits fit in the window used by the previous value the window is reused, which is the
+ * common case for sensor data where neighbouring values share their sign, exponent and high order
+ * mantissa bits.
+ */
+public class GorillaCodec implements DoubleCodec, FloatCodec {
+
+    private final BitWriter writer = new BitWriter();
+    private final BitReader reader = new BitReader();
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        // the worst case is 2 control bits, 5 + 6 bits of window and 64 bits of value
+        writer.reset(count * 10 + 8);
+        if (count == 0)
+            return writer.toByteArray();
+
+        long prev = Double.doubleToRawLongBits(values[0]);
+        writer.write(prev, 64);
+        int prevLeading = Integer.MAX_VALUE;
+        int prevTrailing = 0;
+
+        for (int n = 1; n < count; ++n)
+        {
+            long bits = Double.doubleToRawLongBits(values[n]);
+            long xor = bits ^ prev;
+            prev = bits;
+
+            if (xor == 0)
+            {
+                writer.writeBit(false);
+                continue;
+            }
+            writer.writeBit(true);
+
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= prevLeading && trailing >= prevTrailing)
+            {
+                writer.writeBit(false);
+                writer.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            }
+            else
+            {
+                int meaningful = 64 - leading - trailing;
+                writer.writeBit(true);
+                writer.write(leading, 5);
+                writer.write(meaningful - 1, 6);
+                writer.write(xor >>> trailing, meaningful);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+
+        return writer.toByteArray();
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        if (count == 0)
+            return;
+
+        reader.reset(compressed);
+        long prev = reader.read(64);
+        values[0] = Double.longBitsToDouble(prev);
+        int leading = 0;
+        int trailing = 0;
+
+        for (int n = 1; n < count; ++n)
+        {
+            if (reader.readBit())
+            {
+                if (reader.readBit())
+                {
+                    leading = (int)reader.read(5);
+                    trailing = 64 - leading - (int)reader.read(6) - 1;
+                }
+                prev ^= reader.read(64 - leading - trailing) << trailing;
+            }
+            values[n] = Double.longBitsToDouble(prev);
+        }
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        // the worst case is 2 control bits, 4 + 5 bits of window and 32 bits of value
+        writer.reset(count * 6 + 4);
+        if (count == 0)
+            return writer.toByteArray();
+
+        int prev = Float.floatToRawIntBits(values[0]);
+        writer.write(prev, 32);
+        int prevLeading = Integer.MAX_VALUE;
+        int prevTrailing = 0;
+
+        for (int n = 1; n < count; ++n)
+        {
+            int bits = Float.floatToRawIntBits(values[n]);
+            int xor = bits ^ prev;
+            prev = bits;
+
+            if (xor == 0)
+            {
+                writer.writeBit(false);
+                continue;
+            }
+            writer.writeBit(true);
+
+            int leading = Math.min(Integer.numberOfLeadingZeros(xor), 15);
+            int trailing = Integer.numberOfTrailingZeros(xor);
+            if (leading >= prevLeading && trailing >= prevTrailing)
+            {
+                writer.writeBit(false);
+                writer.write(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+            }
+            else
+            {
+                int meaningful = 32 - leading - trailing;
+                writer.writeBit(true);
+                writer.write(leading, 4);
+                writer.write(meaningful - 1, 5);
+                writer.write(xor >>> trailing, meaningful);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+
+        return writer.toByteArray();
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        if (count == 0)
+            return;
+
+        reader.reset(compressed);
+        int prev = (int)reader.read(32);
+        values[0] = Float.intBitsToFloat(prev);
+        int leading = 0;
+        int trailing = 0;
+
+        for (int n = 1; n < count; ++n)
+        {
+            if (reader.readBit())
+            {
+                if (reader.readBit())
+                {
+                    leading = (int)reader.read(4);
+                    trailing = 32 - leading - (int)reader.read(5) - 1;
+                }
+                prev ^= (int)reader.read(32 - leading - trailing) << trailing;
+            }
+            values[n] = Float.intBitsToFloat(prev);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package memorypalace;
+
+/**
+ * A lossy codec that stores float chunks as 16 bit floating point values, halving their size. Either
+ * IEEE 754 half precision (binary16), with 11 significant bits and a range of about 6e-8 to 65504,
+ * or bfloat16, which keeps the full float range with 8 significant bits, can be used. Values are
+ * rounded to the nearest 16 bit value, ties to even. Values too large for half precision become
+ * infinity.
+ *
+ * The 16 bit values can be stored as they are, in which case single values are read straight from
+ * the compressed chunk, or handed on to a byte codec for further compression.
+ */
+public class HalfFloatCodec implements FloatCodec {
+
+    /**
+     * The 16 bit formats a float can be stored as.
+     */
+    public enum Format {
+        /** IEEE 754 binary16, 5 exponent bits and 10 mantissa bits. **/
+        HALF,
+        /** bfloat16, the top 16 bits of a float, 8 exponent bits and 7 mantissa bits. **/
+        BFLOAT16
+    }
+
+    private final Format format;
+    private final ByteCodec codec;
+
+    /** Scratch space for the 16 bit values when they are passed on to a byte codec. **/
+    private byte[] raw = new byte[0];
+
+    /**
+     * Store values as half precision without further compression.
+     */
+    public HalfFloatCodec() {
+        this(Format.HALF);
+    }
+
+    /**
+     *
+     * @param format The 16 bit format to store values as.
+     * @throws IllegalArgumentException if format is null.
+     */
+    public HalfFloatCodec(Format format) {
+        this(format, null);
+    }
+
+    /**
+     *
+     * @param format The 16 bit format to store values as.
+     * @param codec The codec that compresses the 16 bit values, or null to store them as they are.
+     * @throws IllegalArgumentException if format is null.
+     */
+    public HalfFloatCodec(Format format, ByteCodec codec) {
+        if (format == null)
+            throw new IllegalArgumentException("A format is required");
+        this.format = format;
+        this.codec = codec;
+    }
+
+    @Override
+    public String name() {
+        var name = format == Format.HALF ? "Half" : "BFloat16";
+        return codec == null ? name : name + "+" + codec.name();
+    }
+
+    @Override
+    public boolean supportsGet() {
+        return codec == null;
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        var dest = codec == null ? new byte[count * 2] : scratch(count * 2);
+        for (int n = 0; n < count; ++n)
+        {
+            int bits = toBits(values[n]);
+            dest[n * 2] = (byte)bits;
+            dest[n * 2 + 1] = (byte)(bits >>> 8);
+        }
+        return codec == null ? dest : codec.encode(dest, count * 2, 2);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        var src = compressed;
+        if (codec != null)
+        {
+            src = scratch(count * 2);
+            codec.decode(compressed, src, count * 2, 2);
+        }
+
+        for (int n = 0; n < count; ++n)
+            values[n] = fromBits((src[n * 2] & 0xFF) | (src[n * 2 + 1] & 0xFF) << 8);
+    }
+
+    @Override
+    public float getFloat(byte[] compressed, int count, int idx) {
+        return fromBits((compressed[idx * 2] & 0xFF) | (compressed[idx * 2 + 1] & 0xFF) << 8);
+    }
+
+    private int toBits(float v) {
+        return format == Format.HALF ? floatToHalf(v) : floatToBFloat16(v);
+    }
+
+    private float fromBits(int bits) {
+        return format == Format.HALF ? halfToFloat(bits) : bfloat16ToFloat(bits);
+    }
+
+    private byte[] scratch(int length) {
+        if (raw.length < length)
+            raw = new byte[length];
+        return raw;
+    }
+
+    /**
+     * Convert a float to the nearest half precision value.
+     * @param v The value to convert.
+     * @return The binary16 bits in the low 16 bits of the result.
+     */
+    public static int floatToHalf(float v) {
+        int bits = Float.floatToRawIntBits(v);
+        int sign = bits >>> 16 & 0x8000;
+        int exp = bits >>> 23 & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        // NaN keeps the top of its payload and stays a NaN, infinity stays infinity
+        if (exp == 0xFF)
+            return sign | 0x7C00 | (mantissa == 0 ? 0 : 0x200 | mantissa >>> 13);
+
+        int halfExp = exp - 127 + 15;
+        if (halfExp >= 0x1F)
+            return sign | 0x7C00;
+
+        int shift = 13;
+        if (halfExp <= 0)
+        {
+            // subnormal in half precision, too small values round to zero
+            if (halfExp < -10)
+                return sign;
+            mantissa |= 0x800000;
+            shift = 14 - halfExp;
+            halfExp = 0;
+        }
+
+        int half = halfExp << 10 | mantissa >>> shift;
+        int rest = mantissa & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        // a carry out of the mantissa correctly moves on to the next exponent, or infinity
+        if (rest > halfway || (rest == halfway && (half & 1) != 0))
+            ++half;
+        return sign | half;
+    }
+
+    /**
+     * Convert a half precision value to a float. Every half precision value is exactly representable.
+     * @param half The binary16 bits in the low 16 bits.
+     * @return The value.
+     */
+    public static float halfToFloat(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exp = half >>> 10 & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exp == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+        if (exp == 0)
+        {
+            float v = mantissa * 0x1p-24f;
+            return sign == 0 ? v : -v;
+        }
+        return Float.intBitsToFloat(sign | (exp - 15 + 127) << 23 | mantissa << 13);
+    }
+
+    /**
+     * Convert a float to the nearest bfloat16 value.
+     * @param v The value to convert.
+     * @return The bfloat16 bits in the low 16 bits of the result.
+     */
+    public static int floatToBFloat16(float v) {
+        int bits = Float.floatToRawIntBits(v);
+        if (Float.isNaN(v))
+            return bits >>> 16 | 0x40;
+        return (bits + 0x7FFF + (bits >>> 16 & 1)) >>> 16;
+    }
+
+    /**
+     * Convert a bfloat16 value to a float. Every bfloat16 value is exactly representable.
+     * @param bfloat16 The bfloat16 bits in the low 16 bits.
+     * @return The value.
+     */
+    public static float bfloat16ToFloat(int bfloat16) {
+        return Float.intBitsToFloat(bfloat16 << 16);
+    }
+}
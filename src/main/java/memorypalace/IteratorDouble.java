@@ -4,4 +4,10 @@ public interface IteratorDouble {
 
     boolean hasNext();
     double next();
+
+    /**
+     * Stop any work the iterator is doing in the background. Only iterators that read ahead do any.
+     */
+    default void close() {
+    }
 }
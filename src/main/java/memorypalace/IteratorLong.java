@@ -3,4 +3,10 @@ package memorypalace;
 public interface IteratorLong {
     boolean hasNext();
     long next();
+
+    /**
+     * Stop any work the iterator is doing in the background. Only iterators that read ahead do any.
+     */
+    default void close() {
+    }
 }
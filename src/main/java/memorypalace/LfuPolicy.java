@@ -0,0 +1,115 @@
+package memorypalace;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Evicts the chunk that has been read the fewest times since it was decompressed, the least
+ * recently decompressed of those if there is a tie. Counts are forgotten when a chunk is evicted,
+ * so a chunk that was read heavily long ago can keep a newer chunk out; TinyLfuPolicy ages its
+ * counts to avoid that.
+ */
+public class LfuPolicy implements EvictionPolicy {
+
+    /** The read count of each chunk held. **/
+    private final HashMap<Object, Integer> counts = new HashMap<>();
+    /** The chunks held with each read count, least recently decompressed first. **/
+    private final TreeMap<Integer, LinkedHashSet<Object>> byCount = new TreeMap<>();
+
+    /** The chunk most recently decompressed, which is never evicted. **/
+    private Object newest;
+
+    private long hits;
+    private long misses;
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordHit(Object key) {
+        var count = counts.get(key);
+        if (count == null)
+            return;
+
+        hits++;
+        unlink(key, count);
+        link(key, count + 1);
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        if (counts.containsKey(key))
+            return;
+
+        misses++;
+        newest = key;
+        link(key, 1);
+    }
+
+    @Override
+    public Object evict() {
+        Object fallback = null;
+        for (var bucket : byCount.entrySet())
+        {
+            for (var key : bucket.getValue())
+            {
+                if (key != newest)
+                {
+                    unlink(key, bucket.getKey());
+                    return key;
+                }
+                fallback = key;
+            }
+        }
+
+        if (fallback == null)
+            throw new NoSuchElementException();
+        remove(fallback);
+        return fallback;
+    }
+
+    @Override
+    public void remove(Object key) {
+        var count = counts.get(key);
+        if (count != null)
+            unlink(key, count);
+    }
+
+    @Override
+    public void clear() {
+        counts.clear();
+        byCount.clear();
+        newest = null;
+    }
+
+    @Override
+    public int size() {
+        return counts.size();
+    }
+
+    @Override
+    public long hitCount() {
+        return hits;
+    }
+
+    @Override
+    public long missCount() {
+        return misses;
+    }
+
+    private void link(Object key, int count) {
+        counts.put(key, count);
+        byCount.computeIfAbsent(count, c -> new LinkedHashSet<>()).add(key);
+    }
+
+    private void unlink(Object key, int count) {
+        counts.remove(key);
+        var bucket = byCount.get(count);
+        bucket.remove(key);
+        if (bucket.isEmpty())
+            byCount.remove(count);
+    }
+}
@@ -1,27 +1,29 @@
 package memorypalace;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.DoublePredicate;
 import java.util.function.DoubleUnaryOperator;
 import java.util.stream.DoubleStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 /**
  * This class is modeled off a java.util.List object, but is instead used to carry float primitives.
  * The list is also dynamically self compressing. A ListOfFloat has a chunkSize to dictate the size
  * of sub-sections of the list. When there are enough sub-sections, the least-recently-used sub-sections
- * are compressed. The compression is done using the deflate algorithm. Compressed sections are held
- * in memory as byte arrays until they are needed again. When a compressed section is required it is
- * automatically decompressed.
+ * are compressed. The compression is done by a FloatCodec, which uses the deflate algorithm unless
+ * another codec is given. Compressed sections are held in memory as byte arrays until they are needed
+ * again. When a compressed section is required it is automatically decompressed.
  */
 public class ListOfFloat {
     /** The default number of elements in any given chunk. **/
@@ -30,18 +32,48 @@ public class ListOfFloat {
     /** The number of chunks that are allowed to be in an uncompressed state at any given time. **/
     private final int allowedDecompressedCount;
 
+    /** The number of bytes that chunks in an uncompressed state are allowed to use. **/
+    private final long maxDecompressedBytes;
+
+    /** The bytes used by chunks in an uncompressed state. **/
+    private long decompressedBytes = 0;
+
     /** The multiplier for the largest chunk size allowed before adding another element splits the chunk in 2. **/
     private final double overloadFactor;
 
+    /**
+     * The codec used to compress and decompress chunks. Codecs are not thread safe and read ahead
+     * uses the codec on other threads, so it is locked while any read ahead may be using it.
+     */
+    private final FloatCodec codec;
+
+    /** Read aheads that may still be using the codec on another thread. Only changed by the list's thread. **/
+    private int readAheads = 0;
+
     /** The number of elements overall in the List. **/
     private long elementCount = 0;
 
-    /** The list of chunks that are currently not compressed. **/
-    private final ArrayList<Chunk> decompressedChunks = new ArrayList<>();
+    /** Tracks the chunks that are currently not compressed and picks which to compress next. **/
+    private final EvictionPolicy decompressedChunks;
+
+    /** The budget shared with other lists, null unless the list is registered with one. **/
+    private DecompressionBudget budget;
+
+    /** Compresses a chunk when the shared budget evicts it. **/
+    private final Consumer<Object> budgetEvictor = c -> evictForBudget((Chunk)c);
 
     /** All of the chunks in the List. **/
     private final ArrayList<Chunk> chunks = new ArrayList<>();
 
+    /** Arrays given up by chunks as they were compressed, reused by the next chunks to be decompressed. **/
+    private final ArrayDeque<float[]> arrayPool = new ArrayDeque<>();
+
+    /** The most arrays kept in the pool. Only one is needed when a chunk is swapped for another. **/
+    private static final int MAX_POOLED_ARRAYS = 2;
+
+    /** Chunks that compress to more than this fraction of their raw size are kept uncompressed. **/
+    private static final double INCOMPRESSIBLE_RATIO = 0.9;
+
     private static final long BYTE_COUNT = Float.BYTES;
 
     public ListOfFloat() {
@@ -62,16 +94,81 @@ public class ListOfFloat {
      * @throws IllegalArgumentException if allowedDecompressionCount < 2.
      */
     public ListOfFloat(int chunkSize, double overloadFactor, int allowedDecompressedCount) {
+        this(chunkSize, overloadFactor, allowedDecompressedCount, new DeflateCodec());
+    }
+
+    /**
+     *
+     * @param chunkSize The size of a sub-section of the list
+     * @param overloadFactor The factor by which a sub-section can be larger than chunksize (used when inserting)
+     * @param allowedDecompressedCount The number of sub-sections that can be in a decompressed state at any given time.
+     * @param codec The codec used to compress sub-sections of the list.
+     * @throws IllegalArgumentException if chuckSize < 10 - that's really defeating the purpose!
+     * @throws IllegalArgumentException if overloadFactor is < 1 or > 2
+     * @throws IllegalArgumentException if allowedDecompressionCount < 2.
+     * @throws IllegalArgumentException if codec is null.
+     */
+    public ListOfFloat(int chunkSize, double overloadFactor, int allowedDecompressedCount, FloatCodec codec) {
+        this(chunkSize, overloadFactor, allowedDecompressedCount, codec, EvictionPolicy.lru());
+    }
+
+    /**
+     *
+     * @param chunkSize The size of a sub-section of the list
+     * @param overloadFactor The factor by which a sub-section can be larger than chunksize (used when inserting)
+     * @param allowedDecompressedCount The number of sub-sections that can be in a decompressed state at any given time.
+     * @param codec The codec used to compress sub-sections of the list.
+     * @param evictionPolicy Chooses the sub-section to compress when too many are decompressed. It must not be
+     *                       used by another list.
+     * @throws IllegalArgumentException if chuckSize < 10 - that's really defeating the purpose!
+     * @throws IllegalArgumentException if overloadFactor is < 1 or > 2
+     * @throws IllegalArgumentException if allowedDecompressionCount < 2.
+     * @throws IllegalArgumentException if codec or evictionPolicy is null.
+     */
+    public ListOfFloat(int chunkSize, double overloadFactor, int allowedDecompressedCount, FloatCodec codec,
+                       EvictionPolicy evictionPolicy) {
+        this(chunkSize, overloadFactor, allowedDecompressedCount, Long.MAX_VALUE, codec, evictionPolicy);
+    }
+
+    /**
+     *
+     * @param chunkSize The size of a sub-section of the list
+     * @param overloadFactor The factor by which a sub-section can be larger than chunksize (used when inserting)
+     * @param allowedDecompressedCount The number of sub-sections that can be in a decompressed state at any given time.
+     * @param maxDecompressedBytes The most memory that decompressed sub-sections can use. Sub-sections are compressed
+     *                             until both this and allowedDecompressedCount are met, except that the sub-section
+     *                             in use is never compressed.
+     * @param codec The codec used to compress sub-sections of the list.
+     * @param evictionPolicy Chooses the sub-section to compress when too many are decompressed. It must not be
+     *                       used by another list.
+     * @throws IllegalArgumentException if chuckSize < 10 - that's really defeating the purpose!
+     * @throws IllegalArgumentException if overloadFactor is < 1 or > 2
+     * @throws IllegalArgumentException if allowedDecompressionCount < 2.
+     * @throws IllegalArgumentException if maxDecompressedBytes can't hold 2 sub-sections of chunkSize.
+     * @throws IllegalArgumentException if codec or evictionPolicy is null.
+     */
+    public ListOfFloat(int chunkSize, double overloadFactor, int allowedDecompressedCount, long maxDecompressedBytes,
+                       FloatCodec codec, EvictionPolicy evictionPolicy) {
         if (chunkSize < 10)
             throw new IllegalArgumentException("What are you doing? A tiny chunk size like that is useless.");
         if (overloadFactor < 1 || overloadFactor > 2)
             throw new IllegalArgumentException("Overload factor must be (1, 2)");
         if (allowedDecompressedCount < 2)
             throw new IllegalArgumentException("Must be allowed to have at least 2 chunks decompressed at a time");
+        if (maxDecompressedBytes < 2 * chunkSize * BYTE_COUNT)
+            throw new IllegalArgumentException("Must be allowed enough bytes for at least 2 chunks decompressed at a time");
+        if (codec == null)
+            throw new IllegalArgumentException("A codec is required");
+        if (evictionPolicy == null)
+            throw new IllegalArgumentException("An eviction policy is required");
 
         this.chunkSize = chunkSize;
         this.overloadFactor = overloadFactor;
         this.allowedDecompressedCount = allowedDecompressedCount;
+        this.maxDecompressedBytes = maxDecompressedBytes;
+        this.codec = codec;
+        decompressedChunks = evictionPolicy;
+        decompressedChunks.setCapacity((int)Math.min(allowedDecompressedCount, maxDecompressedBytes / (chunkSize * BYTE_COUNT)));
         chunks.add(new Chunk(0));
     }
 
@@ -94,11 +191,22 @@ public class ListOfFloat {
 
     /**
      * Determine the amount of memory that is being used by arrays this list is holding.
-     * This value contains all compressed and uncompressed data.
+     * This value contains all compressed and uncompressed data. Compressed data shared between chunks,
+     * as done by DedupCodec, is only counted once.
      * @return The number of bytes of compressed and uncompressed data this list is holding.
      */
     public long usedMemory() {
-        return chunks.stream().mapToLong(Chunk::usedMemory).sum();
+        var counted = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        return chunks.stream().mapToLong(c -> c.usedMemory(counted)).sum();
+    }
+
+    /**
+     * Determine the amount of memory used by the sub-sections that are currently decompressed. This is
+     * what maxDecompressedBytes limits.
+     * @return The number of bytes of decompressed data.
+     */
+    public long decompressedBytes() {
+        return decompressedBytes;
     }
 
     /**
@@ -122,6 +230,7 @@ public class ListOfFloat {
             c.append(v);
             chunks.add(c);
         }
+        evictOverLimit();
         return this;
     }
 
@@ -167,6 +276,7 @@ public class ListOfFloat {
             lastChunk = c;
         }
 
+        evictOverLimit();
         return this;
     }
 
@@ -198,6 +308,7 @@ public class ListOfFloat {
             chunks.add(addToChunk.listIdx + 1, newChunks[1]);
         }
         updateOffsets(addToChunk.listIdx);
+        evictOverLimit();
         return this;
     }
 
@@ -245,12 +356,45 @@ public class ListOfFloat {
         elementCount--;
         var ret = pair.chunk.remove(pair.correctedIdx(idx));
         if (pair.chunk.insertPos == 0)
+        {
             chunks.remove(pair.listIdx);
+            decompressedChunks.remove(pair.chunk);
+            untrack(pair.chunk);
+            pair.chunk.dropUncompressed();
+        }
         updateOffsets(pair.listIdx);
 
         return ret;
     }
 
+    /**
+     * Find the first index of a value. Values are compared as by Float.equals,
+     * so NaN can be found.
+     * Compressed chunks are searched without being decompressed when the codec supports it.
+     * @param v The value to find.
+     * @return The index of the first element equal to v, or -1 if there isn't one.
+     */
+    public long indexOf(float v)
+    {
+        for (Chunk c : chunks)
+        {
+            int idx = c.indexOf(v);
+            if (idx >= 0)
+                return c.offset + idx;
+        }
+        return -1;
+    }
+
+    /**
+     * Check if the list holds a value.
+     * @param v The value to look for.
+     * @return true if an element is equal to v.
+     */
+    public boolean contains(float v)
+    {
+        return indexOf(v) >= 0;
+    }
+
     /**
      * Perform an action using each item in the list. This does not change the list.
      *
@@ -269,10 +413,25 @@ public class ListOfFloat {
      */
     public DoubleStream stream() {
 
-        var streamer = new Streamer();
+        var streamer = new Streamer(floatIterator());
         return DoubleStream.iterate(get(0), streamer, streamer);
     }
 
+    /**
+     * Stream the entire contents of the list, decompressing chunks ahead on other threads. A stream
+     * that is not run to the end should be closed to cancel the decompression still pending.
+     * @param readAhead The number of chunks to decompress ahead of the one being read.
+     * @param executor Runs the decompression.
+     * @return A stream for the list.
+     * @see #floatIterator(int, Executor)
+     */
+    public DoubleStream stream(int readAhead, Executor executor) {
+
+        var iterator = floatIterator(readAhead, executor);
+        var streamer = new Streamer(iterator);
+        return DoubleStream.iterate(get(0), streamer, streamer).onClose(iterator::close);
+    }
+
     /**
      * The stream for the list.
      */
@@ -280,10 +439,11 @@ public class ListOfFloat {
     {
         final long count = size();
         long idx = 1;
-        IteratorFloat iterator = floatIterator();
+        final IteratorFloat iterator;
 
-        Streamer()
+        Streamer(IteratorFloat iterator)
         {
+            this.iterator = iterator;
             if (iterator.hasNext())
                 iterator.next();
         }
@@ -437,6 +597,154 @@ public class ListOfFloat {
         };
     }
 
+    /**
+     * An iterator that decompresses the chunks after the one being read on other threads, so that a
+     * scan does not wait for each chunk to be decompressed as it reaches it. Only the decompression
+     * happens on other threads, the list must still only be used by one thread at a time.
+     *
+     * The arrays being decompressed into are taken from the list's pool, but are not counted against
+     * the list's limits or a shared budget until the iterator reaches their chunks, so up to readAhead
+     * more chunks can be decompressed. Decompression still pending is cancelled when the iterator
+     * reaches the end, an iterator that is abandoned before then should be closed.
+     * @param readAhead The number of chunks to decompress ahead of the one being read.
+     * @param executor Runs the decompression.
+     * @return An Iterator like object that does not Autobox.
+     * @throws IllegalArgumentException if readAhead < 1 or there is no executor.
+     */
+    public IteratorFloat floatIterator(int readAhead, Executor executor)
+    {
+        if (readAhead < 1)
+            throw new IllegalArgumentException("Must read ahead at least 1 chunk");
+        if (executor == null)
+            throw new IllegalArgumentException("An executor is required");
+
+        return new IteratorFloat() {
+            int chunkIdx = 0;
+            /** The index of the next chunk to read ahead. **/
+            int aheadIdx = 1;
+            /** Chunks being decompressed, in list order. **/
+            final ArrayDeque<ReadAhead> pending = new ArrayDeque<>();
+            IteratorFloat chunkIter = start();
+
+            @Override
+            public boolean hasNext() {
+                return chunkIter.hasNext();
+            }
+
+            @Override
+            public float next()
+            {
+                float ret = chunkIter.next();
+                if (!chunkIter.hasNext())
+                {
+                    ++chunkIdx;
+                    if (chunkIdx < chunks.size())
+                        chunkIter = start();
+                    else
+                        close();
+                }
+                return ret;
+            }
+
+            @Override
+            public void close()
+            {
+                while (!pending.isEmpty())
+                    pending.poll().cancel();
+            }
+
+            /**
+             * Move to the chunk at chunkIdx, taking its values if they were read ahead, and read
+             * ahead the chunks after it.
+             */
+            IteratorFloat start()
+            {
+                var c = chunks.get(chunkIdx);
+                while (!pending.isEmpty() && pending.peek().chunk != c)
+                    pending.poll().cancel();
+                if (!pending.isEmpty())
+                    pending.poll().install();
+
+                for (aheadIdx = Math.max(aheadIdx, chunkIdx + 1);
+                     aheadIdx <= chunkIdx + readAhead && aheadIdx < chunks.size(); ++aheadIdx)
+                {
+                    var next = chunks.get(aheadIdx);
+                    if (next.uncompressed == null && next.compressed != null)
+                        pending.add(new ReadAhead(next, executor));
+                }
+                return c.floatIterator();
+            }
+        };
+    }
+
+    /**
+     * A chunk being decompressed on another thread.
+     */
+    private class ReadAhead
+    {
+        final Chunk chunk;
+        /** The data being decompressed. The values are only used if the chunk still has it. **/
+        final byte[] compressed;
+        /** The array being decompressed into, owned by this read ahead until it is installed or released. **/
+        final float[] dest;
+        /** Set by whichever of the task and cancel gets there first, the task does nothing if cancel did. **/
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<float[]> values;
+
+        ReadAhead(Chunk chunk, Executor executor)
+        {
+            this.chunk = chunk;
+            compressed = chunk.compressed;
+            int count = chunk.insertPos;
+            // the pool is only used by the list's thread, so the array is taken before handing it over
+            dest = takeArray(count);
+            readAheads++;
+            values = CompletableFuture.supplyAsync(() -> {
+                if (!claimed.compareAndSet(false, true))
+                    return null;
+                synchronized (codec)
+                {
+                    codec.decompress(compressed, dest, count);
+                }
+                return dest;
+            }, executor);
+        }
+
+        /**
+         * Give the chunk its values, unless it has changed since they were read.
+         */
+        void install()
+        {
+            float[] ret;
+            try
+            {
+                ret = values.join();
+            }
+            finally
+            {
+                readAheads--;
+            }
+            if (chunk.uncompressed == null && chunk.compressed == compressed)
+                chunk.readAhead(ret);
+            else
+                releaseArray(ret);
+        }
+
+        /**
+         * Stop the decompression if it has not started, otherwise wait for it to finish, and return
+         * the array to the pool.
+         */
+        void cancel()
+        {
+            if (claimed.compareAndSet(false, true))
+                values.cancel(false);
+            else
+                values.handle((v, ex) -> null).join();
+            readAheads--;
+            releaseArray(dest);
+        }
+    }
+
     public float[] toArray() {
         if (size() > Integer.MAX_VALUE)
             throw new IndexOutOfBoundsException("Cannot create an array this large.");
@@ -479,8 +787,16 @@ public class ListOfFloat {
         //move over all of the starting chunks that are already the right size.
         var unchanged = oldChunks.subList(0, firstShrinkable);
         chunks.addAll(unchanged);
+        if (chunks.isEmpty())
+            chunks.add(new Chunk(0));
 
         unchanged.clear();
+        // the rebuilt chunks must not be compressed, and give up their arrays, while being copied
+        for (var c : oldChunks)
+        {
+            decompressedChunks.remove(c);
+            untrack(c);
+        }
 
         for (int n = 0; n < oldChunks.size(); ++n)
         {
@@ -505,6 +821,10 @@ public class ListOfFloat {
     {
         elementCount = 0;
         chunks.clear();
+        decompressedChunks.clear();
+        decompressedBytes = 0;
+        if (budget != null)
+            budget.removeOwner(this);
         chunks.add(new Chunk(0));
     }
 
@@ -557,18 +877,185 @@ public class ListOfFloat {
     }
 
     /**
-     * Maintian the list of decompressed data.
+     * Get an array for a chunk's values, reusing one from the pool unless more than chunkSize values
+     * are needed. The array may hold values from its last use.
+     *
+     * Every array taken from the pool has a single owner, the chunk holding it as its uncompressed
+     * values or the read ahead decompressing into it, and only the owner gives it back with
+     * releaseArray. Anything else that keeps a reference to the array, such as a chunk iterator,
+     * must stop the owner from releasing it, otherwise the next chunk to be decompressed would
+     * overwrite the values it is reading.
+     * @param minLength The number of values the array must hold.
+     */
+    private float[] takeArray(int minLength)
+    {
+        if (minLength <= chunkSize && !arrayPool.isEmpty())
+            return arrayPool.poll();
+        return new float[Math.max(minLength, chunkSize)];
+    }
+
+    /**
+     * Compress values with the codec, locking it if a read ahead may be using it on another thread.
+     * Lists that are not being read ahead never take the lock.
+     */
+    private byte[] codecCompress(float[] values, int count)
+    {
+        if (readAheads == 0)
+            return codec.compress(values, count);
+        synchronized (codec)
+        {
+            return codec.compress(values, count);
+        }
+    }
+
+    private void codecDecompress(byte[] compressed, float[] values, int count)
+    {
+        if (readAheads == 0)
+        {
+            codec.decompress(compressed, values, count);
+            return;
+        }
+        synchronized (codec)
+        {
+            codec.decompress(compressed, values, count);
+        }
+    }
+
+    private void codecDecompress(byte[] compressed, float[] values, int offset, int count)
+    {
+        if (readAheads == 0)
+        {
+            codec.decompress(compressed, values, offset, count);
+            return;
+        }
+        synchronized (codec)
+        {
+            codec.decompress(compressed, values, offset, count);
+        }
+    }
+
+    private float codecGet(byte[] compressed, int count, int idx)
+    {
+        if (readAheads == 0)
+            return codec.getFloat(compressed, count, idx);
+        synchronized (codec)
+        {
+            return codec.getFloat(compressed, count, idx);
+        }
+    }
+
+    private int codecIndexOf(byte[] compressed, int count, float v)
+    {
+        if (readAheads == 0)
+            return codec.indexOfFloat(compressed, count, v);
+        synchronized (codec)
+        {
+            return codec.indexOfFloat(compressed, count, v);
+        }
+    }
+
+    /**
+     * @return The number of arrays waiting in the pool to be reused.
+     */
+    int pooledArrays()
+    {
+        return arrayPool.size();
+    }
+
+    /**
+     * Give an array that is no longer used back to the pool. Only arrays of exactly chunkSize are
+     * kept, arrays grown by inserts would make new chunks larger than chunkSize.
+     * @param arr An array that nothing other than the caller refers to, see takeArray.
+     */
+    private void releaseArray(float[] arr)
+    {
+        if (arr.length == chunkSize && arrayPool.size() < MAX_POOLED_ARRAYS)
+            arrayPool.push(arr);
+    }
+
+    /**
+     * Maintian the list of decompressed data. Chunks of this list and of other lists sharing its budget
+     * can be compressed, other than this one, so it is called once the chunk's values are in place.
      * @param chunk A chunk that was just decompressed.
      */
     private void addDecompressed(Chunk chunk)
     {
-        decompressedChunks.add(chunk);
-        while (decompressedChunks.size() > allowedDecompressedCount)
+        decompressedChunks.recordMiss(chunk);
+        if (chunk.cachedBytes == 0)
+            chunk.resized(chunk.uncompressed.length);
+
+        evictOverLimit();
+
+        if (budget != null)
+            budget.recordMiss(this, chunk, chunk.cachedBytes, budgetEvictor);
+    }
+
+    /**
+     * Compress the chunks the eviction policy picks until the decompressed chunks are within both the
+     * count and the byte limits. This is also needed after chunks grow, once the values are in place.
+     */
+    private void evictOverLimit()
+    {
+        while (decompressedChunks.size() > allowedDecompressedCount
+                || (decompressedBytes > maxDecompressedBytes && decompressedChunks.size() > 1))
         {
-            decompressedChunks.remove(0).compress();
+            var c = (Chunk)decompressedChunks.evict();
+            untrack(c);
+            c.compress();
         }
     }
 
+    /**
+     * Stop counting a chunk's decompressed bytes, it has been taken out of the eviction policy.
+     */
+    private void untrack(Chunk chunk)
+    {
+        decompressedBytes -= chunk.cachedBytes;
+        chunk.cachedBytes = 0;
+        if (budget != null)
+            budget.remove(chunk);
+    }
+
+    /**
+     * Compress a chunk the shared budget chose to evict.
+     */
+    private void evictForBudget(Chunk chunk)
+    {
+        decompressedChunks.remove(chunk);
+        untrack(chunk);
+        chunk.compress();
+    }
+
+    /**
+     * Start sharing a budget, counting the chunks that are already decompressed against it.
+     * @throws IllegalArgumentException if the list is already registered with a budget.
+     */
+    void joinBudget(DecompressionBudget budget)
+    {
+        if (this.budget == budget)
+            return;
+        if (this.budget != null)
+            throw new IllegalArgumentException("The list is already registered with a budget");
+
+        this.budget = budget;
+        for (var c : new ArrayList<>(chunks))
+        {
+            if (c.cachedBytes > 0)
+                budget.recordMiss(this, c, c.cachedBytes, budgetEvictor);
+        }
+    }
+
+    /**
+     * Stop sharing a budget, the list's own limits still apply.
+     */
+    void leaveBudget(DecompressionBudget budget)
+    {
+        if (this.budget != budget)
+            return;
+        budget.removeOwner(this);
+        this.budget = null;
+    }
+
     private class ChunkInfo
     {
         Chunk chunk;
@@ -599,6 +1086,17 @@ public class ListOfFloat {
         int insertPos = 0;
         /** The chunk as compressed binary data. */
         byte[] compressed = null;
+        /** True if every value in the chunk was found to be constantValue when it was compressed. */
+        boolean constant = false;
+        /** The value held by every element of a constant chunk. */
+        float constantValue;
+        /** The values of a chunk that did not compress well enough to be worth decompressing. */
+        float[] stored = null;
+        /** The number of iterators reading the uncompressed values, which are not pooled if dropped while read. */
+        int readers = 0;
+
+        /** The bytes counted against maxDecompressedBytes, 0 unless the chunk is held by the eviction policy. */
+        long cachedBytes = 0;
 
         /** The offset in the overall list where this chunk's first element is. */
         long offset;
@@ -611,25 +1109,41 @@ public class ListOfFloat {
 
         Chunk(long offset,boolean track)
         {
-            uncompressed = new float[chunkSize];
+            uncompressed = takeArray(chunkSize);
             this.offset = offset;
             if (track)
                 addDecompressed(this);
         }
 
+        /**
+         * Update the bytes counted for the chunk while it is held decompressed.
+         * @param length The number of values the chunk's uncompressed array holds.
+         */
+        void resized(int length)
+        {
+            decompressedBytes += length * BYTE_COUNT - cachedBytes;
+            cachedBytes = length * BYTE_COUNT;
+            if (budget != null)
+                budget.resized(this, cachedBytes);
+        }
+
         long nextOffset()
         {
             return offset + insertPos;
         }
 
-        long usedMemory()
+        long usedMemory(Set<byte[]> counted)
         {
             long ret = 0;
 
             if (uncompressed != null)
                 ret = uncompressed.length * BYTE_COUNT;
-            if (compressed != null)
+            if (compressed != null && counted.add(compressed))
                 ret += compressed.length;
+            if (constant)
+                ret += BYTE_COUNT;
+            if (stored != null && stored != uncompressed)
+                ret += stored.length * BYTE_COUNT;
             return ret;
         }
 
@@ -638,7 +1152,7 @@ public class ListOfFloat {
             if (insertPos >= chunkSize)
                 return false;
 
-            decompress();
+            decompressForAppend();
             uncompressed[insertPos++] = v;
             return true;
         }
@@ -648,17 +1162,43 @@ public class ListOfFloat {
             if (insertPos >= chunkSize)
                 return;
 
-            decompress();
-            int copyLen = uncompressed.length - insertPos;
+            decompressForAppend();
+            int copyLen = chunkSize - insertPos;
             copyLen = Math.min(copyLen, buff.limit() - buff.position());
             buff.get(uncompressed, insertPos, copyLen);
             insertPos += copyLen;
         }
 
-        Chunk[] insert(int idx, float v)
+        /**
+         * Decompress the chunk so more values can be added to the end of it. A chunk that has been
+         * compressed only comes back with room for insertPos values, so it is grown to chunkSize.
+         */
+        void decompressForAppend()
         {
             decompress();
+            modified();
+            if (uncompressed.length < chunkSize)
+            {
+                uncompressed = Arrays.copyOf(uncompressed, chunkSize);
+                if (cachedBytes > 0)
+                    resized(uncompressed.length);
+            }
+        }
+
+        /**
+         * Drop any compressed form of the chunk, it is about to be changed.
+         */
+        void modified()
+        {
             compressed = null;
+            constant = false;
+            stored = null;
+        }
+
+        Chunk[] insert(int idx, float v)
+        {
+            decompress();
+            modified();
 
             //Simple case - there's room, add it
             if (insertPos < uncompressed.length)
@@ -680,6 +1220,8 @@ public class ListOfFloat {
                 dest[idx] = v;
                 System.arraycopy(uncompressed, idx, dest, idx + 1, dest.length - idx - 1);
                 uncompressed = dest;
+                if (cachedBytes > 0)
+                    resized(dest.length);
                 insertPos++;
                 return new Chunk[] {this};
             }
@@ -703,12 +1245,61 @@ public class ListOfFloat {
 
         float get(long idx)
         {
+            if (uncompressed == null && constant)
+                return constantValue;
+            if (uncompressed == null && compressed != null && codec.supportsGet())
+            {
+                return codecGet(compressed, insertPos, (int)idx);
+            }
+
             decompress();
             return uncompressed[(int)idx];
         }
 
+        int indexOf(float v)
+        {
+            if (uncompressed == null && constant)
+                return insertPos > 0 && Float.floatToIntBits(constantValue) == Float.floatToIntBits(v) ? 0 : -1;
+            if (uncompressed == null && compressed != null && codec.supportsIndexOf())
+            {
+                return codecIndexOf(compressed, insertPos, v);
+            }
+
+            var values = uncompressed != null ? uncompressed : stored;
+            if (values == null)
+            {
+                decompress();
+                values = uncompressed;
+            }
+            for (int n = 0; n < insertPos; ++n)
+                if (Float.floatToIntBits(values[n]) == Float.floatToIntBits(v))
+                    return n;
+            return -1;
+        }
+
         void getAll(FloatBuffer buff)
         {
+            if (uncompressed == null && constant)
+            {
+                for (int n = 0; n < insertPos; ++n)
+                    buff.put(constantValue);
+                return;
+            }
+
+            // decode straight into the destination, a chunk that isn't hot doesn't need to become hot
+            if (uncompressed == null && compressed != null && buff.hasArray())
+            {
+                codecDecompress(compressed, buff.array(), buff.arrayOffset() + buff.position(), insertPos);
+                buff.position(buff.position() + insertPos);
+                return;
+            }
+
+            if (uncompressed == null && stored != null)
+            {
+                buff.put(stored, 0, insertPos);
+                return;
+            }
+
             decompress();
             buff.put(uncompressed, 0, insertPos);
         }
@@ -716,7 +1307,7 @@ public class ListOfFloat {
         float set(long idx, float v)
         {
             decompress();
-            compressed = null;
+            modified();
             var ret = uncompressed[(int)idx];
             uncompressed[(int)idx] = v;
             return ret;
@@ -725,7 +1316,7 @@ public class ListOfFloat {
         float remove(long idx)
         {
             decompress();
-            compressed = null;
+            modified();
 
             var ret = uncompressed[(int)idx];
             System.arraycopy(uncompressed, (int) idx + 1, uncompressed, (int) idx, insertPos - 1 - (int) idx);
@@ -735,28 +1326,55 @@ public class ListOfFloat {
 
         void compress()
         {
-            if (compressed != null)
+            if (compressed != null || constant || stored != null)
             {
-                uncompressed = null;
+                dropUncompressed();
                 return;
             }
 
-            var bb = ByteBuffer.allocate(insertPos * (int)BYTE_COUNT);
-            bb.order(ByteOrder.nativeOrder());
-            bb.asFloatBuffer().put(uncompressed, 0, insertPos);
-            uncompressed = null;
-
-            var bout = new ByteArrayOutputStream();
-            try (var out = new DeflaterOutputStream(bout)) {
-                out.write(bb.array());
-                out.finish();
+            if (isConstant())
+            {
+                constant = true;
+                constantValue = uncompressed[0];
+                dropUncompressed();
+                return;
             }
-            catch (IOException ex)
+
+            compressed = codecCompress(uncompressed, insertPos);
+            if (compressed.length > insertPos * BYTE_COUNT * INCOMPRESSIBLE_RATIO)
             {
-                ex.printStackTrace();
+                compressed = null;
+                stored = uncompressed.length == insertPos ? uncompressed : Arrays.copyOf(uncompressed, insertPos);
             }
+            dropUncompressed();
+        }
+
+        /**
+         * Let go of the uncompressed values, returning the array to the pool unless it is also
+         * the stored form of the chunk, or an iterator is reading it.
+         */
+        void dropUncompressed()
+        {
+            if (uncompressed != null && uncompressed != stored && readers == 0)
+                releaseArray(uncompressed);
+            uncompressed = null;
+            readers = 0;
+        }
 
-            compressed = bout.toByteArray();
+        /**
+         * Check if every value in the chunk is the same. Values are compared by their bits so that
+         * NaN and negative zero are kept exactly.
+         */
+        boolean isConstant()
+        {
+            if (insertPos == 0)
+                return false;
+
+            float first = uncompressed[0];
+            for (int n = 1; n < insertPos; ++n)
+                if (Float.floatToRawIntBits(uncompressed[n]) != Float.floatToRawIntBits(first))
+                    return false;
+            return true;
         }
 
         void decompress()
@@ -767,29 +1385,42 @@ public class ListOfFloat {
         void decompress(boolean track)
         {
             if (uncompressed != null)
-                return;
-
-            if (track)
-                addDecompressed(this);
-
-            var bin = new ByteArrayInputStream(compressed);
-            try (var in = new InflaterInputStream(bin))
             {
-                var bb = ByteBuffer.allocate(insertPos * (int)BYTE_COUNT);
-                bb.order(ByteOrder.nativeOrder());
-                int offset = 0;
-                while (bb.limit() != offset)
+                if (track)
                 {
-                    int read = in.read(bb.array(), offset, insertPos * (int)BYTE_COUNT - offset);
-                    offset += read;
+                    decompressedChunks.recordHit(this);
+                    if (budget != null)
+                        budget.recordHit(this);
                 }
-                uncompressed = new float[insertPos];
-                bb.asFloatBuffer().get(uncompressed);
+                return;
             }
-            catch (IOException ex)
+
+            if (stored != null)
+                uncompressed = stored;
+            else
             {
-                ex.printStackTrace();
+                uncompressed = takeArray(insertPos);
+                if (constant)
+                    Arrays.fill(uncompressed, 0, insertPos, constantValue);
+                else
+                {
+                    codecDecompress(compressed, uncompressed, insertPos);
+                }
             }
+
+            // counted once the values are in place, by the length of the array actually held
+            if (track)
+                addDecompressed(this);
+        }
+
+        /**
+         * Take values that were decompressed ahead of time on another thread.
+         * @param values The values decompressed from the chunk's compressed data.
+         */
+        void readAhead(float[] values)
+        {
+            uncompressed = values;
+            addDecompressed(this);
         }
 
 
@@ -800,14 +1431,39 @@ public class ListOfFloat {
 
         public String toString()
         {
-            return String.format("count=%d, is compressed=%b", insertPos, compressed != null);
+            return String.format("count=%d, is compressed=%b", insertPos, compressed != null || constant);
         }
 
         IteratorFloat floatIterator()
         {
+            if (uncompressed == null && constant)
+            {
+                return new IteratorFloat() {
+                    int idx;
+
+                    @Override
+                    public boolean hasNext() {
+                        return idx < insertPos;
+                    }
+
+                    @Override
+                    public float next() {
+                        idx++;
+                        return constantValue;
+                    }
+                };
+            }
+
             decompress();
 
+            // the chunk can be compressed while it is read, by another chunk or a list sharing the
+            // budget being decompressed, so the array is kept out of the pool until the last value has
+            // been read. Stored values are never pooled.
+            boolean counted = insertPos > 0 && uncompressed != stored;
+            if (counted)
+                readers++;
             return new IteratorFloat() {
+                final float[] values = uncompressed;
                 int idx;
 
                 @Override
@@ -817,7 +1473,10 @@ public class ListOfFloat {
 
                 @Override
                 public float next() {
-                    return uncompressed[idx++];
+                    float ret = values[idx++];
+                    if (idx == insertPos && counted && uncompressed == values)
+                        readers--;
+                    return ret;
                 }
             };
         }
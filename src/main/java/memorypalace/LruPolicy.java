@@ -0,0 +1,65 @@
+package memorypalace;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used chunk. Chunks are kept in an access ordered LinkedHashMap, so both
+ * recording an access and finding the chunk to evict take constant time.
+ */
+public class LruPolicy implements EvictionPolicy {
+
+    /** The chunks held, least recently used first. **/
+    private final LinkedHashMap<Object, Boolean> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+
+    @Override
+    public void setCapacity(int capacity) {
+    }
+
+    @Override
+    public void recordHit(Object key) {
+        if (entries.get(key) != null)
+            hits++;
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        if (entries.put(key, Boolean.TRUE) == null)
+            misses++;
+    }
+
+    @Override
+    public Object evict() {
+        var it = entries.keySet().iterator();
+        var ret = it.next();
+        it.remove();
+        return ret;
+    }
+
+    @Override
+    public void remove(Object key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public long hitCount() {
+        return hits;
+    }
+
+    @Override
+    public long missCount() {
+        return misses;
+    }
+}
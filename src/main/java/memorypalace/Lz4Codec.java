@@ -0,0 +1,163 @@
+package memorypalace;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A pure Java LZ77 codec modelled on the LZ4 block format. It gives up some compression ratio
+ * compared to deflate in exchange for much faster decompression, which makes it a good choice
+ * when chunks are decompressed often, such as random access through get.
+ *
+ * The compressed data is a series of sequences. Each sequence starts with a token byte holding a
+ * literal length and a match length, followed by the literal bytes, a 2 byte offset back to the
+ * match and any extra length bytes. Decompression is just copying.
+ */
+public class Lz4Codec extends ByteCodec {
+
+    private static final int MIN_MATCH = 4;
+    /** The last match must start at least this far from the end of the input. **/
+    private static final int MF_LIMIT = 12;
+    /** The last bytes of the input are always literals. **/
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** The last position each hash of 4 bytes was seen at. **/
+    private final int[] hashTable = new int[1 << HASH_BITS];
+
+    /** Scratch space that compressed data is written to before it is copied to a right sized array. **/
+    private byte[] output = new byte[0];
+
+    @Override
+    protected byte[] encode(byte[] raw, int length, int width) {
+        int bound = length + length / 255 + 16;
+        if (output.length < bound)
+            output = new byte[bound];
+
+        int op = 0;
+        int anchor = 0;
+        if (length > MF_LIMIT)
+        {
+            Arrays.fill(hashTable, -1);
+            int ip = 0;
+            int limit = length - MF_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            while (ip < limit)
+            {
+                int seq = (int)INTS.get(raw, ip);
+                int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+
+                if (ref < 0 || ip - ref > MAX_OFFSET || (int)INTS.get(raw, ref) != seq)
+                {
+                    // step faster through data that is not matching
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+
+                int len = MIN_MATCH;
+                while (ip + len < matchLimit && raw[ref + len] == raw[ip + len])
+                    len++;
+
+                op = writeSequence(raw, anchor, ip - anchor, ip - ref, len, op);
+                ip += len;
+                anchor = ip;
+            }
+        }
+
+        // the final sequence is only literals
+        int literals = length - anchor;
+        int token = Math.min(literals, 15) << 4;
+        output[op++] = (byte)token;
+        op = writeLength(literals, op);
+        System.arraycopy(raw, anchor, output, op, literals);
+        op += literals;
+
+        return Arrays.copyOf(output, op);
+    }
+
+    private int writeSequence(byte[] raw, int start, int literals, int offset, int matchLen, int op) {
+        int extra = matchLen - MIN_MATCH;
+        output[op++] = (byte)((Math.min(literals, 15) << 4) | Math.min(extra, 15));
+        op = writeLength(literals, op);
+        System.arraycopy(raw, start, output, op, literals);
+        op += literals;
+        output[op++] = (byte)offset;
+        output[op++] = (byte)(offset >>> 8);
+        return writeLength(extra, op);
+    }
+
+    /**
+     * Write the part of a length that does not fit in its 4 bits of the token.
+     */
+    private int writeLength(int len, int op) {
+        if (len < 15)
+            return op;
+
+        len -= 15;
+        while (len >= 255)
+        {
+            output[op++] = (byte)255;
+            len -= 255;
+        }
+        output[op++] = (byte)len;
+        return op;
+    }
+
+    @Override
+    protected void decode(byte[] compressed, byte[] raw, int length, int width) {
+        int ip = 0;
+        int op = 0;
+        while (op < length)
+        {
+            int token = compressed[ip++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == 15)
+            {
+                int b;
+                do
+                {
+                    b = compressed[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(compressed, ip, raw, op, literals);
+            ip += literals;
+            op += literals;
+            if (op >= length)
+                break;
+
+            int offset = (compressed[ip] & 0xFF) | (compressed[ip + 1] & 0xFF) << 8;
+            ip += 2;
+
+            int len = token & 0xF;
+            if (len == 15)
+            {
+                int b;
+                do
+                {
+                    b = compressed[ip++] & 0xFF;
+                    len += b;
+                } while (b == 255);
+            }
+            len += MIN_MATCH;
+
+            int ref = op - offset;
+            if (offset >= len)
+                System.arraycopy(raw, ref, raw, op, len);
+            else
+            {
+                // the match overlaps the bytes being written, so copy forwards one at a time
+                for (int n = 0; n < len; ++n)
+                    raw[op + n] = raw[ref + n];
+            }
+            op += len;
+        }
+    }
+}
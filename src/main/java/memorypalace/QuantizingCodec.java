@@ -0,0 +1,283 @@
+package memorypalace;
+
+import java.util.Arrays;
+
+/**
+ * A lossy codec for floating point chunks that only keeps as much precision as is asked for. Each
+ * value is rounded to an integer, either a multiple of a fixed step for an absolute error bound or
+ * the value's bits with the low order mantissa bits dropped for a relative error bound, and the
+ * integers are compressed by an integer codec. Rounded neighbouring values are close together, so
+ * a delta codec stores them in a byte or two each instead of eight.
+ *
+ * Every value is checked against the bound as it is rounded. A chunk that cannot be rounded within
+ * the bound, because it holds NaN, infinities or values too large or small for the bound, is
+ * compressed losslessly with the Gorilla codec instead. A value read back from a list using this
+ * codec is therefore always within the bound of the value that was added.
+ *
+ * The kind of encoding used is stored as the last byte of the compressed data, so the integer codec
+ * must ignore any data after what it wrote. An integer codec that reads a tag of its own from the
+ * last byte, such as AdaptiveCodec, is given the data without this one.
+ */
+public class QuantizingCodec implements DoubleCodec, FloatCodec {
+
+    private static final byte LOSSLESS = 0;
+    private static final byte QUANTIZED = 1;
+
+    /**
+     * The step is shrunk by this much below twice the error bound, so that the rounding of the
+     * reconstructed value does not push values halfway between two steps past the bound.
+     */
+    private static final double STEP_MARGIN = 0.999;
+
+    /** The largest integer a value is rounded to, beyond this the chunk is stored losslessly. **/
+    private static final double MAX_QUANTIZED = (double)(1L << 62);
+
+    private final boolean relative;
+    private final double maxError;
+    private final double step;
+    private final int doubleShift;
+    private final int floatShift;
+    private final LongCodec codec;
+    private final GorillaCodec lossless = new GorillaCodec();
+
+    /** Scratch space for the rounded values. **/
+    private long[] quantized = new long[0];
+
+    private QuantizingCodec(boolean relative, double maxError, LongCodec codec) {
+        if (!(maxError > 0) || Double.isInfinite(maxError))
+            throw new IllegalArgumentException("The error bound must be a positive number");
+        if (codec == null)
+            throw new IllegalArgumentException("A codec is required");
+
+        this.relative = relative;
+        this.maxError = maxError;
+        this.codec = codec;
+        step = maxError * 2 * STEP_MARGIN;
+        doubleShift = 52 - mantissaBits(maxError, 52);
+        floatShift = 23 - mantissaBits(maxError, 23);
+    }
+
+    /**
+     * A codec that keeps every value within a fixed distance of the value stored, and compresses the
+     * rounded values with the delta codec.
+     * @param maxError The largest difference allowed between a value stored and the value read back.
+     * @return The codec.
+     * @throws IllegalArgumentException if maxError is not a positive number.
+     */
+    public static QuantizingCodec absolute(double maxError) {
+        return absolute(maxError, new DeltaCodec());
+    }
+
+    /**
+     *
+     * @param maxError The largest difference allowed between a value stored and the value read back.
+     * @param codec The codec that compresses the rounded values.
+     * @return The codec.
+     * @throws IllegalArgumentException if maxError is not a positive number or codec is null.
+     */
+    public static QuantizingCodec absolute(double maxError, LongCodec codec) {
+        return new QuantizingCodec(false, maxError, codec);
+    }
+
+    /**
+     * A codec that keeps every value within a fraction of its own size of the value stored, and
+     * compresses the rounded values with the delta codec. For example 1e-4 keeps about four
+     * significant decimal digits.
+     * @param maxRelativeError The largest difference allowed between a value stored and the value
+     *                         read back, as a fraction of the value stored.
+     * @return The codec.
+     * @throws IllegalArgumentException if maxRelativeError is not a positive number.
+     */
+    public static QuantizingCodec relative(double maxRelativeError) {
+        return relative(maxRelativeError, new DeltaCodec());
+    }
+
+    /**
+     *
+     * @param maxRelativeError The largest difference allowed between a value stored and the value
+     *                         read back, as a fraction of the value stored.
+     * @param codec The codec that compresses the rounded values.
+     * @return The codec.
+     * @throws IllegalArgumentException if maxRelativeError is not a positive number or codec is null.
+     */
+    public static QuantizingCodec relative(double maxRelativeError, LongCodec codec) {
+        return new QuantizingCodec(true, maxRelativeError, codec);
+    }
+
+    @Override
+    public String name() {
+        return (relative ? "Relative(" : "Absolute(") + maxError + ")+" + codec.name();
+    }
+
+    /**
+     * @return true if the error bound is relative to each value, false if it is absolute.
+     */
+    public boolean isRelative() {
+        return relative;
+    }
+
+    /**
+     * @return The error bound the codec was built with.
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        var q = scratch(count);
+        for (int n = 0; n < count; ++n)
+        {
+            double v = values[n];
+            if (relative)
+            {
+                q[n] = roundBits(Double.doubleToRawLongBits(v), doubleShift);
+                if (!withinBound(v, Double.longBitsToDouble(restoreBits(q[n], doubleShift))))
+                    return tag(lossless, lossless.compress(values, count), LOSSLESS);
+            }
+            else
+            {
+                double scaled = Math.rint(v / step);
+                if (!(Math.abs(scaled) < MAX_QUANTIZED) || !withinBound(v, scaled * step))
+                    return tag(lossless, lossless.compress(values, count), LOSSLESS);
+                q[n] = (long)scaled;
+            }
+        }
+
+        return tag(codec, codec.compress(q, count), QUANTIZED);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        if (compressed[compressed.length - 1] == LOSSLESS)
+        {
+            lossless.decompress(compressed, values, count);
+            return;
+        }
+
+        var q = scratch(count);
+        codec.decompress(AdaptiveCodec.untag(codec, compressed), q, count);
+        if (relative)
+            for (int n = 0; n < count; ++n)
+                values[n] = Double.longBitsToDouble(restoreBits(q[n], doubleShift));
+        else
+            for (int n = 0; n < count; ++n)
+                values[n] = q[n] * step;
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        var q = scratch(count);
+        for (int n = 0; n < count; ++n)
+        {
+            float v = values[n];
+            if (relative)
+            {
+                q[n] = roundBits(Float.floatToRawIntBits(v) & 0xFFFFFFFFL, floatShift, 31);
+                if (!withinBound(v, Float.intBitsToFloat((int)restoreBits(q[n], floatShift, 31))))
+                    return tag(lossless, lossless.compress(values, count), LOSSLESS);
+            }
+            else
+            {
+                double scaled = Math.rint(v / step);
+                if (!(Math.abs(scaled) < MAX_QUANTIZED) || !withinBound(v, (float)(scaled * step)))
+                    return tag(lossless, lossless.compress(values, count), LOSSLESS);
+                q[n] = (long)scaled;
+            }
+        }
+
+        return tag(codec, codec.compress(q, count), QUANTIZED);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        if (compressed[compressed.length - 1] == LOSSLESS)
+        {
+            lossless.decompress(compressed, values, count);
+            return;
+        }
+
+        var q = scratch(count);
+        codec.decompress(AdaptiveCodec.untag(codec, compressed), q, count);
+        if (relative)
+            for (int n = 0; n < count; ++n)
+                values[n] = Float.intBitsToFloat((int)restoreBits(q[n], floatShift, 31));
+        else
+            for (int n = 0; n < count; ++n)
+                values[n] = (float)(q[n] * step);
+    }
+
+    /**
+     * Check that a reconstructed value is within the error bound of the original.
+     */
+    private boolean withinBound(double original, double restored) {
+        double bound = relative ? maxError * Math.abs(original) : maxError;
+        return Math.abs(restored - original) <= bound;
+    }
+
+    /**
+     * Work out how many mantissa bits must be kept so that rounding to them stays within a relative
+     * error. Rounding to k bits is out by at most 2^-(k+1) of the value.
+     */
+    private static int mantissaBits(double maxRelativeError, int available) {
+        int bits = 0;
+        while (bits < available && Math.scalb(1.0, -(bits + 1)) > maxRelativeError)
+            ++bits;
+        return bits;
+    }
+
+    private static long roundBits(long bits, int shift) {
+        return roundBits(bits, shift, 63);
+    }
+
+    /**
+     * Round the magnitude of a floating point bit pattern to the nearest multiple of 2^shift and
+     * return it as a signed integer, so that neighbouring values give neighbouring integers.
+     */
+    private static long roundBits(long bits, int shift, int signBit) {
+        boolean negative = (bits >>> signBit & 1) != 0;
+        long magnitude = bits & ~(1L << signBit);
+        if (shift > 0)
+            magnitude = (magnitude + (1L << (shift - 1))) >>> shift;
+        return negative ? -magnitude - 1 : magnitude;
+    }
+
+    private static long restoreBits(long rounded, int shift) {
+        return restoreBits(rounded, shift, 63);
+    }
+
+    private static long restoreBits(long rounded, int shift, int signBit) {
+        if (rounded < 0)
+            return ((-rounded - 1) << shift) | (1L << signBit);
+        return rounded << shift;
+    }
+
+    private long[] scratch(int count) {
+        if (quantized.length < count)
+            quantized = new long[count];
+        return quantized;
+    }
+
+    @Override
+    public boolean readsTrailingTag() {
+        return true;
+    }
+
+    @Override
+    public void copied(byte[] compressed, byte[] copy) {
+        if (compressed[compressed.length - 1] == LOSSLESS)
+            lossless.copied(compressed, copy);
+        else
+            codec.copied(compressed, copy);
+    }
+
+    /**
+     * Add the kind of encoding to the end of the compressed data.
+     */
+    private static byte[] tag(ChunkCodec source, byte[] compressed, byte kind) {
+        var ret = Arrays.copyOf(compressed, compressed.length + 1);
+        ret[compressed.length] = kind;
+        source.copied(compressed, ret);
+        return ret;
+    }
+}
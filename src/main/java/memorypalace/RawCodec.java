@@ -0,0 +1,20 @@
+package memorypalace;
+
+import java.util.Arrays;
+
+/**
+ * Stores chunks without compressing them. This is useful for data that does not compress, where any
+ * other codec would only add decompression time.
+ */
+public class RawCodec extends ByteCodec {
+
+    @Override
+    protected byte[] encode(byte[] raw, int length, int width) {
+        return Arrays.copyOf(raw, length);
+    }
+
+    @Override
+    protected void decode(byte[] compressed, byte[] raw, int length, int width) {
+        System.arraycopy(compressed, 0, raw, 0, length);
+    }
+}
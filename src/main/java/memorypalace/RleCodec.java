@@ -0,0 +1,337 @@
+package memorypalace;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Run-length encoding for chunks with long runs of repeated values, such as status codes and flags.
+ * The compressed data is the number of runs, the index just past the end of each run, then the value
+ * of each run. Decompressing fills each run with Arrays.fill, and because the run ends are sorted a
+ * single value can be found with a binary search, without decompressing the chunk. Searching for a
+ * value only has to look at each run once.
+ *
+ * Floating point values are compared by their bits, so NaN and negative zero are kept exactly.
+ */
+public class RleCodec implements DoubleCodec, FloatCodec, IntCodec, LongCodec {
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** Scratch space for the run ends and values before they are copied to a right sized array. **/
+    private int[] ends = new int[0];
+    private long[] runValues = new long[0];
+
+    @Override
+    public boolean supportsGet() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsIndexOf() {
+        return true;
+    }
+
+    @Override
+    public byte[] compress(double[] values, int count) {
+        int runs = findRuns(values, count);
+        return write(runs, Long.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, double[] values, int offset, int count) {
+        int runs = runCount(compressed);
+        int start = offset;
+        for (int r = 0; r < runs; ++r)
+        {
+            int end = offset + end(compressed, r);
+            Arrays.fill(values, start, end, Double.longBitsToDouble((long)LONGS.get(compressed, valuePos(runs, r, Long.BYTES))));
+            start = end;
+        }
+    }
+
+    @Override
+    public double getDouble(byte[] compressed, int count, int idx) {
+        int runs = runCount(compressed);
+        return Double.longBitsToDouble((long)LONGS.get(compressed, valuePos(runs, findRun(compressed, runs, idx), Long.BYTES)));
+    }
+
+    @Override
+    public int indexOfDouble(byte[] compressed, int count, double v) {
+        long find = Double.doubleToLongBits(v);
+        int runs = runCount(compressed);
+        for (int r = 0; r < runs; ++r)
+            if (Double.doubleToLongBits(Double.longBitsToDouble((long)LONGS.get(compressed, valuePos(runs, r, Long.BYTES)))) == find)
+                return runStart(compressed, r);
+        return -1;
+    }
+
+    @Override
+    public byte[] compress(float[] values, int count) {
+        int runs = findRuns(values, count);
+        return write(runs, Integer.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, float[] values, int offset, int count) {
+        int runs = runCount(compressed);
+        int start = offset;
+        for (int r = 0; r < runs; ++r)
+        {
+            int end = offset + end(compressed, r);
+            Arrays.fill(values, start, end, Float.intBitsToFloat((int)INTS.get(compressed, valuePos(runs, r, Integer.BYTES))));
+            start = end;
+        }
+    }
+
+    @Override
+    public float getFloat(byte[] compressed, int count, int idx) {
+        int runs = runCount(compressed);
+        return Float.intBitsToFloat((int)INTS.get(compressed, valuePos(runs, findRun(compressed, runs, idx), Integer.BYTES)));
+    }
+
+    @Override
+    public int indexOfFloat(byte[] compressed, int count, float v) {
+        int find = Float.floatToIntBits(v);
+        int runs = runCount(compressed);
+        for (int r = 0; r < runs; ++r)
+            if (Float.floatToIntBits(Float.intBitsToFloat((int)INTS.get(compressed, valuePos(runs, r, Integer.BYTES)))) == find)
+                return runStart(compressed, r);
+        return -1;
+    }
+
+    @Override
+    public byte[] compress(int[] values, int count) {
+        int runs = findRuns(values, count);
+        return write(runs, Integer.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, int[] values, int offset, int count) {
+        int runs = runCount(compressed);
+        int start = offset;
+        for (int r = 0; r < runs; ++r)
+        {
+            int end = offset + end(compressed, r);
+            Arrays.fill(values, start, end, (int)INTS.get(compressed, valuePos(runs, r, Integer.BYTES)));
+            start = end;
+        }
+    }
+
+    @Override
+    public int getInt(byte[] compressed, int count, int idx) {
+        int runs = runCount(compressed);
+        return (int)INTS.get(compressed, valuePos(runs, findRun(compressed, runs, idx), Integer.BYTES));
+    }
+
+    @Override
+    public int indexOfInt(byte[] compressed, int count, int v) {
+        int runs = runCount(compressed);
+        for (int r = 0; r < runs; ++r)
+            if ((int)INTS.get(compressed, valuePos(runs, r, Integer.BYTES)) == v)
+                return runStart(compressed, r);
+        return -1;
+    }
+
+    @Override
+    public byte[] compress(long[] values, int count) {
+        int runs = findRuns(values, count);
+        return write(runs, Long.BYTES);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int count) {
+        decompress(compressed, values, 0, count);
+    }
+
+    @Override
+    public void decompress(byte[] compressed, long[] values, int offset, int count) {
+        int runs = runCount(compressed);
+        int start = offset;
+        for (int r = 0; r < runs; ++r)
+        {
+            int end = offset + end(compressed, r);
+            Arrays.fill(values, start, end, (long)LONGS.get(compressed, valuePos(runs, r, Long.BYTES)));
+            start = end;
+        }
+    }
+
+    @Override
+    public long getLong(byte[] compressed, int count, int idx) {
+        int runs = runCount(compressed);
+        return (long)LONGS.get(compressed, valuePos(runs, findRun(compressed, runs, idx), Long.BYTES));
+    }
+
+    @Override
+    public int indexOfLong(byte[] compressed, int count, long v) {
+        int runs = runCount(compressed);
+        for (int r = 0; r < runs; ++r)
+            if ((long)LONGS.get(compressed, valuePos(runs, r, Long.BYTES)) == v)
+                return runStart(compressed, r);
+        return -1;
+    }
+
+    /**
+     * Split the values into runs, filling ends and runValues. Floating point values are compared by
+     * their raw bits.
+     * @return The number of runs.
+     */
+    private int findRuns(double[] values, int count) {
+        ensureScratch(count);
+        if (count == 0)
+            return 0;
+
+        int runs = 1;
+        long last = Double.doubleToRawLongBits(values[0]);
+        runValues[0] = last;
+        for (int n = 1; n < count; ++n)
+        {
+            long v = Double.doubleToRawLongBits(values[n]);
+            if (v != last)
+            {
+                ends[runs - 1] = n;
+                runValues[runs++] = v;
+                last = v;
+            }
+        }
+        ends[runs - 1] = count;
+        return runs;
+    }
+
+    private int findRuns(float[] values, int count) {
+        ensureScratch(count);
+        if (count == 0)
+            return 0;
+
+        int runs = 1;
+        int last = Float.floatToRawIntBits(values[0]);
+        runValues[0] = last;
+        for (int n = 1; n < count; ++n)
+        {
+            int v = Float.floatToRawIntBits(values[n]);
+            if (v != last)
+            {
+                ends[runs - 1] = n;
+                runValues[runs++] = v;
+                last = v;
+            }
+        }
+        ends[runs - 1] = count;
+        return runs;
+    }
+
+    private int findRuns(int[] values, int count) {
+        ensureScratch(count);
+        if (count == 0)
+            return 0;
+
+        int runs = 1;
+        int last = values[0];
+        runValues[0] = last;
+        for (int n = 1; n < count; ++n)
+        {
+            int v = values[n];
+            if (v != last)
+            {
+                ends[runs - 1] = n;
+                runValues[runs++] = v;
+                last = v;
+            }
+        }
+        ends[runs - 1] = count;
+        return runs;
+    }
+
+    private int findRuns(long[] values, int count) {
+        ensureScratch(count);
+        if (count == 0)
+            return 0;
+
+        int runs = 1;
+        long last = values[0];
+        runValues[0] = last;
+        for (int n = 1; n < count; ++n)
+        {
+            long v = values[n];
+            if (v != last)
+            {
+                ends[runs - 1] = n;
+                runValues[runs++] = v;
+                last = v;
+            }
+        }
+        ends[runs - 1] = count;
+        return runs;
+    }
+
+    private void ensureScratch(int count) {
+        if (ends.length < count)
+        {
+            ends = new int[count];
+            runValues = new long[count];
+        }
+    }
+
+    private byte[] write(int runs, int width) {
+        var ret = new byte[Integer.BYTES + runs * (Integer.BYTES + width)];
+        INTS.set(ret, 0, runs);
+        for (int r = 0; r < runs; ++r)
+        {
+            INTS.set(ret, Integer.BYTES * (r + 1), ends[r]);
+            if (width == Long.BYTES)
+                LONGS.set(ret, valuePos(runs, r, width), runValues[r]);
+            else
+                INTS.set(ret, valuePos(runs, r, width), (int)runValues[r]);
+        }
+        return ret;
+    }
+
+    private static int runCount(byte[] compressed) {
+        return (int)INTS.get(compressed, 0);
+    }
+
+    private static int end(byte[] compressed, int run) {
+        return (int)INTS.get(compressed, Integer.BYTES * (run + 1));
+    }
+
+    private static int runStart(byte[] compressed, int run) {
+        return run == 0 ? 0 : end(compressed, run - 1);
+    }
+
+    private static int valuePos(int runs, int run, int width) {
+        return Integer.BYTES * (runs + 1) + run * width;
+    }
+
+    /**
+     * Binary search for the run holding an index.
+     */
+    private static int findRun(byte[] compressed, int runs, int idx) {
+        int low = 0;
+        int high = runs - 1;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (end(compressed, mid) <= idx)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
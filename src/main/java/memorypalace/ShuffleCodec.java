@@ -0,0 +1,74 @@
+package memorypalace;
+
+/**
+ * A filter that regroups the bytes of a chunk by significance before handing them to another byte
+ * codec, as done by Blosc. All of the first bytes of the values are followed by all of the second
+ * bytes and so on. For numeric data the sign, exponent and high order bytes change slowly, so
+ * grouping them together gives the wrapped codec long runs to work with.
+ */
+public class ShuffleCodec extends ByteCodec {
+
+    private final ByteCodec codec;
+
+    /** Scratch space for the shuffled bytes. **/
+    private byte[] shuffled = new byte[0];
+
+    /**
+     * Shuffle bytes before compressing them with deflate.
+     */
+    public ShuffleCodec() {
+        this(new DeflateCodec());
+    }
+
+    /**
+     *
+     * @param codec The codec that compresses the shuffled bytes.
+     * @throws IllegalArgumentException if codec is null.
+     */
+    public ShuffleCodec(ByteCodec codec) {
+        if (codec == null)
+            throw new IllegalArgumentException("A codec is required");
+        this.codec = codec;
+    }
+
+    @Override
+    public String name() {
+        return "Shuffle+" + codec.name();
+    }
+
+    @Override
+    protected byte[] encode(byte[] raw, int length, int width) {
+        ensureShuffled(length);
+
+        int count = length / width;
+        for (int b = 0; b < width; ++b)
+        {
+            int out = b * count;
+            for (int n = 0; n < count; ++n)
+                shuffled[out + n] = raw[n * width + b];
+        }
+        System.arraycopy(raw, count * width, shuffled, count * width, length - count * width);
+
+        return codec.encode(shuffled, length, width);
+    }
+
+    @Override
+    protected void decode(byte[] compressed, byte[] raw, int length, int width) {
+        ensureShuffled(length);
+        codec.decode(compressed, shuffled, length, width);
+
+        int count = length / width;
+        for (int b = 0; b < width; ++b)
+        {
+            int in = b * count;
+            for (int n = 0; n < count; ++n)
+                raw[n * width + b] = shuffled[in + n];
+        }
+        System.arraycopy(shuffled, count * width, raw, count * width, length - count * width);
+    }
+
+    private void ensureShuffled(int size) {
+        if (shuffled.length < size)
+            shuffled = new byte[size];
+    }
+}
@@ -0,0 +1,228 @@
+package memorypalace;
+
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Evicts with the W-TinyLFU algorithm of Einziger, Friedman and Manes, as used by Caffeine. Newly
+ * decompressed chunks go into a small LRU window. A chunk leaving the window is only admitted to the
+ * main area if it has been used more often than the chunk the main area would evict, so a scan
+ * cannot push frequently used chunks out. Use counts are kept approximately in a count-min sketch,
+ * which includes chunks that are not held, and are halved periodically so that old popularity fades.
+ * The sketch starts small and grows with the number of chunks held, up to a fixed size.
+ * The main area is a segmented LRU, chunks read again while on probation move to a protected segment.
+ */
+public class TinyLfuPolicy implements EvictionPolicy {
+
+    /** The share of the capacity used by the window. **/
+    private static final double WINDOW_SHARE = 0.01;
+    /** The share of the main area used by the protected segment. **/
+    private static final double PROTECTED_SHARE = 0.8;
+    /** The most chunks the frequency sketch is sized for, however large the capacity. **/
+    private static final int MAX_SKETCH_CAPACITY = 1 << 20;
+    /** The number of chunks the frequency sketch is sized for at first. **/
+    private static final int INITIAL_SKETCH_CAPACITY = 16;
+
+    /** The chunks in each area, least recently used first. **/
+    private final LinkedHashSet<Object> window = new LinkedHashSet<>();
+    private final LinkedHashSet<Object> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<Object> protect = new LinkedHashSet<>();
+
+    private int windowCapacity = 1;
+    private int mainCapacity = 1;
+    private int protectedCapacity = 1;
+    /** The size the sketch grows to as more chunks are held. **/
+    private int sketchCapacity = INITIAL_SKETCH_CAPACITY;
+    private FrequencySketch sketch = new FrequencySketch(INITIAL_SKETCH_CAPACITY);
+
+    /** The chunk most recently decompressed, which is never evicted. **/
+    private Object newest;
+
+    private long hits;
+    private long misses;
+
+    @Override
+    public void setCapacity(int capacity) {
+        windowCapacity = Math.max(1, (int)(capacity * WINDOW_SHARE));
+        mainCapacity = Math.max(1, capacity - windowCapacity);
+        protectedCapacity = Math.max(1, (int)(mainCapacity * PROTECTED_SHARE));
+        sketchCapacity = Math.min(capacity, MAX_SKETCH_CAPACITY);
+        sketch = new FrequencySketch(Math.min(sketchCapacity, INITIAL_SKETCH_CAPACITY));
+    }
+
+    @Override
+    public void recordHit(Object key) {
+        if (window.remove(key))
+            window.add(key);
+        else if (probation.remove(key))
+        {
+            protect.add(key);
+            var it = protect.iterator();
+            while (protect.size() > protectedCapacity)
+            {
+                probation.add(it.next());
+                it.remove();
+            }
+        }
+        else if (protect.remove(key))
+            protect.add(key);
+        else
+            return;
+
+        hits++;
+        sketch.increment(key);
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        if (window.contains(key) || probation.contains(key) || protect.contains(key))
+            return;
+
+        misses++;
+        newest = key;
+        window.add(key);
+        // the sketch is only grown when enough chunks are held to need it, which forgets the counts
+        if (size() > sketch.capacity && sketch.capacity < sketchCapacity)
+            sketch = new FrequencySketch(Math.min(sketch.capacity * 2, sketchCapacity));
+        sketch.increment(key);
+    }
+
+    @Override
+    public Object evict() {
+        while (window.size() > windowCapacity)
+        {
+            var it = window.iterator();
+            var candidate = it.next();
+            if (candidate == newest)
+                candidate = it.next();
+            window.remove(candidate);
+            if (probation.size() + protect.size() < mainCapacity)
+            {
+                probation.add(candidate);
+                continue;
+            }
+
+            var victim = probation.isEmpty() ? protect.iterator().next() : probation.iterator().next();
+            if (sketch.frequency(candidate) <= sketch.frequency(victim))
+                return candidate;
+
+            probation.remove(victim);
+            protect.remove(victim);
+            probation.add(candidate);
+            return victim;
+        }
+
+        if (!probation.isEmpty())
+            return removeFirst(probation);
+        if (!protect.isEmpty())
+            return removeFirst(protect);
+
+        for (var key : window)
+        {
+            if (key != newest || window.size() == 1)
+            {
+                window.remove(key);
+                return key;
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove(Object key) {
+        window.remove(key);
+        probation.remove(key);
+        protect.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protect.clear();
+        newest = null;
+    }
+
+    @Override
+    public int size() {
+        return window.size() + probation.size() + protect.size();
+    }
+
+    @Override
+    public long hitCount() {
+        return hits;
+    }
+
+    @Override
+    public long missCount() {
+        return misses;
+    }
+
+    private static Object removeFirst(LinkedHashSet<Object> set) {
+        var it = set.iterator();
+        var ret = it.next();
+        it.remove();
+        return ret;
+    }
+
+    /**
+     * A count-min sketch of 4 rows of counters that saturate at 15. Once the number of increments
+     * reaches ten times the number of counters in a row, every counter is halved.
+     */
+    private static class FrequencySketch {
+
+        private static final int[] SEEDS = {0x97cb3127, 0xb3c8c8a5, 0x2c6b0b2f, 0x6a09e667};
+
+        private final int capacity;
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            this.capacity = capacity;
+            int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+            rows = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = width * 10;
+        }
+
+        int frequency(Object key) {
+            int h = spread(key.hashCode());
+            int ret = Integer.MAX_VALUE;
+            for (int n = 0; n < SEEDS.length; ++n)
+                ret = Math.min(ret, rows[n][index(h, n)]);
+            return ret;
+        }
+
+        void increment(Object key) {
+            int h = spread(key.hashCode());
+            for (int n = 0; n < SEEDS.length; ++n)
+            {
+                int idx = index(h, n);
+                if (rows[n][idx] < 15)
+                    rows[n][idx]++;
+            }
+
+            if (++additions == sampleSize)
+            {
+                additions = 0;
+                for (var row : rows)
+                    for (int n = 0; n < row.length; ++n)
+                        row[n] >>= 1;
+            }
+        }
+
+        private int index(int h, int row) {
+            int ret = h * SEEDS[row];
+            return (ret ^ ret >>> 16) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            return h;
+        }
+    }
+}
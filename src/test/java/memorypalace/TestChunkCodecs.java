@@ -0,0 +1,649 @@
+package memorypalace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+public class TestChunkCodecs
+{
+    static final int COUNT = 1000;
+
+    double[] doubles()
+    {
+        var r = new Random(42);
+        var ret = new double[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            ret[n] = n % 7 == 0 ? r.nextDouble() : n / 4.0;
+        return ret;
+    }
+
+    float[] floats()
+    {
+        var r = new Random(42);
+        var ret = new float[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            ret[n] = n % 7 == 0 ? r.nextFloat() : n / 4.0f;
+        return ret;
+    }
+
+    int[] ints()
+    {
+        var r = new Random(42);
+        var ret = new int[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            ret[n] = n % 7 == 0 ? r.nextInt() : n * 3;
+        return ret;
+    }
+
+    long[] longs()
+    {
+        var r = new Random(42);
+        var ret = new long[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            ret[n] = n % 7 == 0 ? r.nextLong() : 1_600_000_000_000L + n * 1000L;
+        return ret;
+    }
+
+    void roundTrip(DoubleCodec codec)
+    {
+        var values = doubles();
+        for (int count : new int[] {0, 1, 17, COUNT, 17})
+        {
+            var dest = new double[count];
+            var compressed = codec.compress(values, count);
+            codec.decompress(compressed, dest, count);
+            for (int n = 0; n < count; ++n)
+                Assert.assertEquals(Double.doubleToRawLongBits(values[n]), Double.doubleToRawLongBits(dest[n]));
+
+            var offsetDest = new double[count + 3];
+            codec.decompress(compressed, offsetDest, 3, count);
+            Assert.assertArrayEquals(dest, Arrays.copyOfRange(offsetDest, 3, count + 3), 0);
+        }
+    }
+
+    void roundTrip(FloatCodec codec)
+    {
+        var values = floats();
+        for (int count : new int[] {0, 1, 17, COUNT, 17})
+        {
+            var dest = new float[count];
+            var compressed = codec.compress(values, count);
+            codec.decompress(compressed, dest, count);
+            for (int n = 0; n < count; ++n)
+                Assert.assertEquals(Float.floatToRawIntBits(values[n]), Float.floatToRawIntBits(dest[n]));
+
+            var offsetDest = new float[count + 3];
+            codec.decompress(compressed, offsetDest, 3, count);
+            Assert.assertArrayEquals(dest, Arrays.copyOfRange(offsetDest, 3, count + 3), 0);
+        }
+    }
+
+    void roundTrip(IntCodec codec)
+    {
+        var values = ints();
+        for (int count : new int[] {0, 1, 17, COUNT, 17})
+        {
+            var dest = new int[count];
+            var compressed = codec.compress(values, count);
+            codec.decompress(compressed, dest, count);
+            for (int n = 0; n < count; ++n)
+                Assert.assertEquals(values[n], dest[n]);
+
+            var offsetDest = new int[count + 3];
+            codec.decompress(compressed, offsetDest, 3, count);
+            Assert.assertArrayEquals(dest, Arrays.copyOfRange(offsetDest, 3, count + 3));
+        }
+    }
+
+    void roundTrip(LongCodec codec)
+    {
+        var values = longs();
+        for (int count : new int[] {0, 1, 17, COUNT, 17})
+        {
+            var dest = new long[count];
+            var compressed = codec.compress(values, count);
+            codec.decompress(compressed, dest, count);
+            for (int n = 0; n < count; ++n)
+                Assert.assertEquals(values[n], dest[n]);
+
+            var offsetDest = new long[count + 3];
+            codec.decompress(compressed, offsetDest, 3, count);
+            Assert.assertArrayEquals(dest, Arrays.copyOfRange(offsetDest, 3, count + 3));
+        }
+    }
+
+    @Test
+    public void testDeflate()
+    {
+        var codec = new DeflateCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        for (int level : new int[] {Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION, Deflater.NO_COMPRESSION})
+            for (int strategy : new int[] {Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY})
+                roundTrip((DoubleCodec)new DeflateCodec(level, strategy));
+
+        var values = doubles();
+        Assert.assertTrue(new DeflateCodec(Deflater.BEST_COMPRESSION).compress(values, COUNT).length
+                < new DeflateCodec(Deflater.NO_COMPRESSION).compress(values, COUNT).length);
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DeflateCodec(10));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DeflateCodec(-2));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DeflateCodec(1, 3));
+    }
+
+    @Test
+    public void testDeflateDictionary()
+    {
+        var plain = new DeflateCodec();
+        var trained = new DeflateCodec().trainDictionary(4, 4096);
+        var r = new Random(5);
+        var chunk = new double[128];
+        int plainSize = 0;
+        int trainedSize = 0;
+        var before = new ArrayList<byte[]>();
+
+        for (int c = 0; c < 20; ++c)
+        {
+            for (int n = 0; n < chunk.length; ++n)
+                chunk[n] = 100 + r.nextInt(16) * 0.125;
+            var compressed = trained.compress(chunk, chunk.length);
+            before.add(compressed);
+            var dest = new double[chunk.length];
+            trained.decompress(compressed, dest, chunk.length);
+            Assert.assertArrayEquals(chunk, dest, 0);
+
+            if (c >= 4)
+            {
+                plainSize += plain.compress(chunk, chunk.length).length;
+                trainedSize += compressed.length;
+            }
+        }
+
+        Assert.assertNotNull(trained.getDictionary());
+        Assert.assertTrue(trainedSize < plainSize);
+
+        // chunks compressed with an older dictionary, or none, can still be read
+        trained.setDictionary(new byte[] {1, 2, 3});
+        var dest = new double[chunk.length];
+        trained.decompress(before.get(0), dest, chunk.length);
+        trained.decompress(before.get(10), dest, chunk.length);
+        r = new Random(5);
+        for (int c = 0; c <= 10; ++c)
+            for (int n = 0; n < chunk.length; ++n)
+                chunk[n] = 100 + r.nextInt(16) * 0.125;
+        Assert.assertArrayEquals(chunk, dest, 0);
+
+        // [1, 2, 1] and [2, 0, 2] have the same Adler-32, only one can be used while chunks need it
+        var colliding = new DeflateCodec();
+        colliding.setDictionary(new byte[] {1, 2, 1});
+        colliding.setDictionary(new byte[] {2, 0, 2});
+        Assert.assertEquals(1, colliding.dictionaryCount());
+        var held = colliding.compress(chunk, chunk.length);
+        Assert.assertThrows(IllegalArgumentException.class, () -> colliding.setDictionary(new byte[] {1, 2, 1}));
+        colliding.setDictionary(null);
+        Assert.assertEquals(1, colliding.dictionaryCount());
+        colliding.decompress(held, dest, chunk.length);
+        Assert.assertArrayEquals(chunk, dest, 0);
+
+        // arrays tagged by a wrapping codec keep the dictionary too
+        var inner = new DeflateCodec();
+        inner.setDictionary(new byte[] {1, 2, 1});
+        var tagged = new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64, inner).compress(chunk, chunk.length);
+        System.gc();
+        inner.setDictionary(null);
+        Assert.assertEquals(1, inner.dictionaryCount());
+        Assert.assertTrue(tagged.length > 0);
+
+        // data that cannot be decompressed fails rather than leaving the destination unchanged
+        Assert.assertThrows(IllegalStateException.class, () -> plain.decompress(before.get(10), dest, chunk.length));
+        var truncated = Arrays.copyOf(before.get(0), before.get(0).length / 2);
+        Assert.assertThrows(IllegalStateException.class, () -> new DeflateCodec().decompress(truncated, dest, chunk.length));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DeflateCodec().trainDictionary(0, 100));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DeflateCodec().setDictionary(new byte[DeflateCodec.MAX_DICTIONARY_SIZE + 1]));
+    }
+
+    @Test
+    public void testDelta()
+    {
+        var codec = new DeltaCodec();
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var timestamps = new long[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            timestamps[n] = 1_600_000_000_000L + n * 1000L;
+        Assert.assertTrue(codec.compress(timestamps, COUNT).length <= 2 * COUNT + 8);
+
+        var extremes = new long[] {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MIN_VALUE};
+        var dest = new long[extremes.length];
+        codec.decompress(codec.compress(extremes, extremes.length), dest, extremes.length);
+        Assert.assertArrayEquals(extremes, dest);
+
+        var intExtremes = new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, Integer.MIN_VALUE};
+        var intDest = new int[intExtremes.length];
+        codec.decompress(codec.compress(intExtremes, intExtremes.length), intDest, intExtremes.length);
+        Assert.assertArrayEquals(intExtremes, intDest);
+    }
+
+    @Test
+    public void testGorilla()
+    {
+        var codec = new GorillaCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+
+        var special = new double[] {Double.NaN, Double.POSITIVE_INFINITY, -0.0, 0.0, Double.MIN_VALUE, -Double.MAX_VALUE};
+        var dest = new double[special.length];
+        codec.decompress(codec.compress(special, special.length), dest, special.length);
+        Assert.assertArrayEquals(special, dest, 0);
+
+        var sensor = new double[COUNT];
+        double reading = 20;
+        for (int n = 0; n < COUNT; ++n)
+        {
+            if (n % 4 == 0)
+                reading += 0.5;
+            sensor[n] = reading;
+        }
+        Assert.assertTrue(codec.compress(sensor, COUNT).length < new DeflateCodec().compress(sensor, COUNT).length);
+    }
+
+    @Test
+    public void testQuantizing()
+    {
+        var r = new Random(42);
+        var telemetry = new double[COUNT];
+        var floatTelemetry = new float[COUNT];
+        double reading = 1500;
+        for (int n = 0; n < COUNT; ++n)
+        {
+            reading += r.nextGaussian() * 0.01;
+            telemetry[n] = reading;
+            floatTelemetry[n] = (float)reading;
+        }
+
+        var dest = new double[COUNT];
+        var floatDest = new float[COUNT];
+        var absolute = QuantizingCodec.absolute(1e-4);
+        var compressed = absolute.compress(telemetry, COUNT);
+        Assert.assertTrue(compressed.length * 3 < new DeflateCodec().compress(telemetry, COUNT).length);
+        absolute.decompress(compressed, dest, COUNT);
+        Assert.assertArrayEquals(telemetry, dest, 1e-4);
+        absolute.decompress(absolute.compress(floatTelemetry, COUNT), floatDest, COUNT);
+        Assert.assertArrayEquals(floatTelemetry, floatDest, 1e-4f);
+
+        var relative = QuantizingCodec.relative(1e-3);
+        var wide = new double[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            wide[n] = (n % 2 == 0 ? 1 : -1) * Math.exp(r.nextGaussian() * 20);
+        relative.decompress(relative.compress(wide, COUNT), dest, COUNT);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(wide[n], dest[n], Math.abs(wide[n]) * 1e-3);
+        relative.decompress(relative.compress(floatTelemetry, COUNT), floatDest, COUNT);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(floatTelemetry[n], floatDest[n], Math.abs(floatTelemetry[n]) * 1e-3);
+
+        // values that can't be rounded within the bound are stored exactly
+        var special = new double[] {1, Double.NaN, Double.POSITIVE_INFINITY, -0.0, 1e300};
+        for (var codec : new QuantizingCodec[] {absolute, relative})
+        {
+            codec.decompress(codec.compress(special, special.length), dest, special.length);
+            Assert.assertArrayEquals(special, Arrays.copyOf(dest, special.length), 0);
+            codec.decompress(codec.compress(telemetry, 0), dest, 0);
+        }
+
+        var lst = new ListOfDouble(100, 1.5, 2, QuantizingCodec.absolute(0.005));
+        lst.addAll(telemetry);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(telemetry[n], lst.get(n), 0.005);
+    }
+
+    @Test
+    public void testHalfFloat()
+    {
+        for (int bits = 0; bits < 0x10000; ++bits)
+        {
+            float half = HalfFloatCodec.halfToFloat(bits);
+            float bfloat16 = HalfFloatCodec.bfloat16ToFloat(bits);
+            if (!Float.isNaN(half))
+                Assert.assertEquals(bits, HalfFloatCodec.floatToHalf(half));
+            else
+                Assert.assertTrue(Float.isNaN(HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(half))));
+            if (!Float.isNaN(bfloat16))
+                Assert.assertEquals(bits, HalfFloatCodec.floatToBFloat16(bfloat16));
+        }
+
+        // rounding to nearest, ties to even, and overflow
+        Assert.assertEquals(1.0f, HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(1 + 0x1p-11f)), 0);
+        Assert.assertEquals(1 + 0x1p-9f, HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(1 + 0x3p-11f)), 0);
+        Assert.assertEquals(0x1p-24f, HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(0x1.1p-25f)), 0);
+        Assert.assertEquals(0, HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(0x1p-25f)), 0);
+        Assert.assertEquals(65504, HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(65519)), 0);
+        Assert.assertEquals(Float.NEGATIVE_INFINITY, HalfFloatCodec.halfToFloat(HalfFloatCodec.floatToHalf(-65520)), 0);
+        Assert.assertEquals(0x1.fep127f, HalfFloatCodec.bfloat16ToFloat(HalfFloatCodec.floatToBFloat16(0x1.fe8p127f)), 0);
+
+        var values = floats();
+        var dest = new float[COUNT];
+        for (var codec : new HalfFloatCodec[] {new HalfFloatCodec(), new HalfFloatCodec(HalfFloatCodec.Format.BFLOAT16),
+                new HalfFloatCodec(HalfFloatCodec.Format.HALF, new DeflateCodec())})
+        {
+            float error = codec.name().startsWith("Half") ? 0x1p-11f : 0x1p-8f;
+            var compressed = codec.compress(values, COUNT);
+            Assert.assertTrue(compressed.length <= COUNT * 2);
+            codec.decompress(compressed, dest, COUNT);
+            for (int n = 0; n < COUNT; ++n)
+            {
+                Assert.assertEquals(values[n], dest[n], Math.abs(values[n]) * error);
+                if (codec.supportsGet())
+                    Assert.assertEquals(dest[n], codec.getFloat(compressed, COUNT, n), 0);
+            }
+        }
+
+        var lst = new ListOfFloat(100, 1.5, 2, new HalfFloatCodec());
+        lst.addAll(values);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(values[n], lst.get(n), Math.abs(values[n]) * 0x1p-11f);
+    }
+
+    @Test
+    public void testFrameOfReference()
+    {
+        var codec = new FrameOfReferenceCodec();
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var narrow = new int[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            narrow[n] = -1000 + (n * 31) % 100;
+        var compressed = codec.compress(narrow, COUNT);
+        Assert.assertTrue(compressed.length < COUNT);
+        var dest = new int[COUNT];
+        codec.decompress(compressed, dest, COUNT);
+        Assert.assertArrayEquals(narrow, dest);
+
+        var extremes = new long[] {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MIN_VALUE};
+        var longDest = new long[extremes.length];
+        codec.decompress(codec.compress(extremes, extremes.length), longDest, extremes.length);
+        Assert.assertArrayEquals(extremes, longDest);
+
+        var intExtremes = new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, Integer.MIN_VALUE};
+        var intDest = new int[intExtremes.length];
+        codec.decompress(codec.compress(intExtremes, intExtremes.length), intDest, intExtremes.length);
+        Assert.assertArrayEquals(intExtremes, intDest);
+    }
+
+    @Test
+    public void testRaw()
+    {
+        var codec = new RawCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+    }
+
+    @Test
+    public void testLz4()
+    {
+        var codec = new Lz4Codec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var repeating = new int[COUNT * 100];
+        for (int n = 0; n < repeating.length; ++n)
+            repeating[n] = n % 360;
+        var compressed = codec.compress(repeating, repeating.length);
+        Assert.assertTrue(compressed.length < repeating.length / 10);
+        var dest = new int[repeating.length];
+        codec.decompress(compressed, dest, repeating.length);
+        Assert.assertArrayEquals(repeating, dest);
+
+        var zeros = new long[COUNT * 10];
+        var longDest = new long[zeros.length];
+        longDest[5] = 1;
+        codec.decompress(codec.compress(zeros, zeros.length), longDest, zeros.length);
+        Assert.assertArrayEquals(zeros, longDest);
+    }
+
+    @Test
+    public void testRle()
+    {
+        var codec = new RleCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var status = new int[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            status[n] = (n / 100) % 3;
+        var compressed = codec.compress(status, COUNT);
+        Assert.assertTrue(compressed.length < 100);
+        Assert.assertTrue(codec.supportsGet());
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(status[n], codec.getInt(compressed, COUNT, n));
+
+        var values = doubles();
+        compressed = codec.compress(values, COUNT);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(values[n], codec.getDouble(compressed, COUNT, n), 0);
+
+        var decompressions = new int[1];
+        var counting = new RleCodec() {
+            @Override
+            public void decompress(byte[] compressed, int[] values, int count) {
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var lst = new ListOfInt(100, 1.5, 2, counting);
+        lst.addAll(status);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(status[n], lst.get(n));
+        Assert.assertEquals(200, lst.indexOf(2));
+        Assert.assertEquals(0, decompressions[0]);
+
+        Assert.assertThrows(UnsupportedOperationException.class, () -> new DeflateCodec().getInt(new byte[0], 0, 0));
+    }
+
+    @Test
+    public void testDictionary()
+    {
+        var codec = new DictionaryCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var prices = new double[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            prices[n] = 99.5 + ((n * 7) % 16) * 0.25;
+        var compressed = codec.compress(prices, COUNT);
+        Assert.assertTrue(compressed.length < COUNT);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(prices[n], codec.getDouble(compressed, COUNT, n), 0);
+        Assert.assertEquals(3, codec.indexOfDouble(compressed, COUNT, prices[3]));
+        Assert.assertEquals(-1, codec.indexOfDouble(compressed, COUNT, 1.0));
+
+        var categories = new long[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            categories[n] = 1_000_000L * ((n * 13) % 5);
+        var longCompressed = codec.compress(categories, COUNT);
+        for (int n = 0; n < COUNT; ++n)
+            Assert.assertEquals(categories[n], codec.getLong(longCompressed, COUNT, n));
+        Assert.assertEquals(1, codec.indexOfLong(longCompressed, COUNT, 3_000_000L));
+
+        var nan = new float[] {1, Float.NaN, 2};
+        Assert.assertEquals(1, codec.indexOfFloat(codec.compress(nan, 3), 3, Float.NaN));
+
+        var decompressions = new int[1];
+        var counting = new DictionaryCodec() {
+            @Override
+            public void decompress(byte[] compressed, long[] values, int count) {
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var lst = new ListOfLong(100, 1.5, 2, counting);
+        lst.addAll(categories);
+        lst.add(42);
+        Assert.assertEquals(COUNT, lst.indexOf(42));
+        Assert.assertEquals(1, lst.indexOf(3_000_000L));
+        Assert.assertFalse(lst.contains(7));
+        Assert.assertEquals(3_000_000L, lst.get(1));
+        Assert.assertEquals(0, decompressions[0]);
+    }
+
+    @Test
+    public void testDedup()
+    {
+        var codec = new DedupCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var pattern = new int[360];
+        var r = new Random(42);
+        for (int n = 0; n < pattern.length; ++n)
+            pattern[n] = r.nextInt(1000);
+
+        var dedup = new DedupCodec();
+        var lst = new ListOfInt(120, 1.5, 2, dedup);
+        var plain = new ListOfInt(120, 1.5, 2, new DeflateCodec());
+        for (int n = 0; n < 1000; ++n)
+        {
+            lst.addAll(pattern);
+            plain.addAll(pattern);
+        }
+        Assert.assertTrue(dedup.hits() > 2900);
+        Assert.assertTrue(lst.usedMemory() * 100 < plain.usedMemory());
+
+        // changing a shared chunk leaves the others as they were
+        lst.set(1000, -1);
+        plain.set(1000, -1);
+        lst.remove(5000);
+        plain.remove(5000);
+        lst.add(7000, -2);
+        plain.add(7000, -2);
+        Assert.assertArrayEquals(plain.toArray(), lst.toArray());
+        Assert.assertTrue(dedup.distinctCount() < 10);
+
+        var searchable = new ListOfInt(120, 1.5, 2, new DedupCodec(new DictionaryCodec()));
+        for (int n = 0; n < 10; ++n)
+            searchable.addAll(pattern);
+        Assert.assertEquals(pattern[300], searchable.get(3 * 360 + 300));
+        Assert.assertEquals(3, searchable.indexOf(pattern[3]));
+    }
+
+    @Test
+    public void testShuffle()
+    {
+        var codec = new ShuffleCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var sensor = new double[COUNT];
+        var r = new Random(3);
+        for (int n = 0; n < COUNT; ++n)
+            sensor[n] = 1000 + r.nextInt(100) / 8.0;
+        Assert.assertTrue(codec.compress(sensor, COUNT).length < new DeflateCodec().compress(sensor, COUNT).length);
+        Assert.assertEquals("Shuffle+RawCodec", new ShuffleCodec(new RawCodec()).name());
+    }
+
+    @Test
+    public void testAdaptive()
+    {
+        var codec = new AdaptiveCodec();
+        roundTrip((DoubleCodec)codec);
+        roundTrip((FloatCodec)codec);
+        roundTrip((IntCodec)codec);
+        roundTrip((LongCodec)codec);
+
+        var smallest = new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64, new RawCodec(), new DeltaCodec());
+        var timestamps = new long[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            timestamps[n] = 1_600_000_000_000L + n * 1000L;
+        var dest = new long[COUNT];
+        smallest.decompress(smallest.compress(timestamps, COUNT), dest, COUNT);
+        Assert.assertArrayEquals(timestamps, dest);
+        Assert.assertEquals(Long.valueOf(1), smallest.selections().get("DeltaCodec"));
+        Assert.assertEquals(Long.valueOf(0), smallest.selections().get("RawCodec"));
+
+        // codecs that keep their own tag in the last byte can be nested either way round
+        var nested = new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64, new RawCodec(),
+                new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64, new DeltaCodec(), new RawCodec()));
+        nested.decompress(nested.compress(timestamps, COUNT), dest, COUNT);
+        Assert.assertArrayEquals(timestamps, dest);
+        var offsetDest = new long[COUNT + 5];
+        nested.decompress(nested.compress(timestamps, COUNT), offsetDest, 5, COUNT);
+        Assert.assertArrayEquals(timestamps, Arrays.copyOfRange(offsetDest, 5, COUNT + 5));
+
+        var readings = new double[COUNT];
+        for (int n = 0; n < COUNT; ++n)
+            readings[n] = 1500 + n / 1000.0;
+        var doubleDest = new double[COUNT];
+        var adaptiveQuantizing = new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64,
+                QuantizingCodec.absolute(1e-4), new RawCodec());
+        adaptiveQuantizing.decompress(adaptiveQuantizing.compress(readings, COUNT), doubleDest, COUNT);
+        Assert.assertArrayEquals(readings, doubleDest, 1e-4);
+        var quantizingAdaptive = QuantizingCodec.absolute(1e-4,
+                new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64, new DeltaCodec(), new RawCodec()));
+        quantizingAdaptive.decompress(quantizingAdaptive.compress(readings, COUNT), doubleDest, COUNT);
+        Assert.assertArrayEquals(readings, doubleDest, 1e-4);
+
+        var lst = new ListOfDouble(100, 1.5, 2, new AdaptiveCodec());
+        var r = new Random(7);
+        for (int n = 0; n < 5000; ++n)
+            lst.add(n < 2500 ? n : r.nextDouble());
+        r = new Random(7);
+        for (int n = 0; n < 5000; ++n)
+            Assert.assertEquals(n < 2500 ? n : r.nextDouble(), lst.get(n), 0);
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64));
+        Assert.assertThrows(UnsupportedOperationException.class,
+                () -> new AdaptiveCodec(AdaptiveCodec.Policy.smallest(), 64, new DeltaCodec()).compress(new double[1], 1));
+    }
+
+    @Test
+    public void testListUsesCodec()
+    {
+        var calls = new int[2];
+        var codec = new LongCodec() {
+            final DeflateCodec deflate = new DeflateCodec();
+
+            @Override
+            public byte[] compress(long[] values, int count) {
+                calls[0]++;
+                return deflate.compress(values, count);
+            }
+
+            @Override
+            public void decompress(byte[] compressed, long[] values, int count) {
+                calls[1]++;
+                deflate.decompress(compressed, values, count);
+            }
+        };
+
+        var lst = new ListOfLong(10, 1.5, 2, codec);
+        for (int n = 0; n < 1000; ++n)
+            lst.add(n);
+        for (int n = 0; n < 1000; ++n)
+            Assert.assertEquals(n, lst.get(n));
+
+        Assert.assertTrue(calls[0] > 0);
+        Assert.assertTrue(calls[1] > 0);
+    }
+}
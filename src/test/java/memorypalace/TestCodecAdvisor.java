@@ -0,0 +1,80 @@
+package memorypalace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public class TestCodecAdvisor
+{
+    @Test
+    public void testAdvise()
+    {
+        var lst = new ListOfLong();
+        for (int n = 0; n < 20_000; ++n)
+            lst.add(1_600_000_000_000L + n * 1000L);
+
+        var report = new CodecAdvisor().advise(lst);
+        // every long codec with every chunk size
+        Assert.assertEquals(9 * 5, report.getResults().size());
+        var best = report.getBest();
+        for (var r : report.getResults())
+        {
+            Assert.assertTrue(best.getScore() <= r.getScore());
+            Assert.assertTrue(r.getRatio() > 0);
+            Assert.assertTrue(r.getDecompressMBs() > 0);
+            // every chunk size is run over the whole sample
+            Assert.assertEquals(20_000 * Long.BYTES, r.getRatio() * r.getCompressedBytes(), 1e-6);
+        }
+        Assert.assertTrue(best.getRatio() > 4);
+        Assert.assertTrue(report.getAllowedDecompressedCount() >= 2);
+        Assert.assertTrue(report.newCodec() instanceof LongCodec);
+
+        var advised = new ListOfLong(report.getChunkSize(), report.getOverloadFactor(),
+                report.getAllowedDecompressedCount(), (LongCodec)report.newCodec());
+        for (int n = 0; n < 20_000; ++n)
+            advised.add(lst.get(n));
+        Assert.assertArrayEquals(lst.toArray(), advised.toArray());
+    }
+
+    @Test
+    public void testSmallSample()
+    {
+        var lst = new ListOfDouble();
+        for (int n = 0; n < 50; ++n)
+            lst.add(n / 2.0);
+
+        List<Supplier<ChunkCodec>> codecs = List.of(GorillaCodec::new, DeltaCodec::new);
+        var advisor = new CodecAdvisor(codecs, new int[] {128, 1024}, AdaptiveCodec.Policy.smallest(), 1000, 0.1, 1);
+        var report = advisor.advise(lst);
+        Assert.assertEquals(1, report.getResults().size());
+        Assert.assertEquals("GorillaCodec", report.getBest().getCodec());
+        Assert.assertEquals(50, report.getChunkSize());
+        Assert.assertTrue(report.toString().contains("GorillaCodec"));
+    }
+
+    @Test
+    public void testExceptions()
+    {
+        var advisor = new CodecAdvisor();
+        try {
+            advisor.advise(new ListOfInt());
+            Assert.fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new CodecAdvisor(List.of(), new int[] {128}, AdaptiveCodec.Policy.smallest(), 1000, 0.1, 1);
+            Assert.fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new CodecAdvisor(List.of(GorillaCodec::new), new int[] {128}, AdaptiveCodec.Policy.smallest(), 1000, 0.1, 1)
+                    .advise(new ListOfInt(128, 1.5, 2).add(1));
+            Assert.fail("Expected an exception");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
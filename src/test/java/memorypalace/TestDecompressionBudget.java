@@ -0,0 +1,247 @@
+package memorypalace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class TestDecompressionBudget
+{
+    static ListOfLong newList(int size, int seed)
+    {
+        var lst = new ListOfLong(100, 1.5, 50, new DeflateCodec());
+        var r = new Random(seed);
+        for (int n = 0; n < size; ++n)
+            lst.add(r.nextInt(1000));
+        return lst;
+    }
+
+    static long[] expected(int size, int seed)
+    {
+        var r = new Random(seed);
+        var ret = new long[size];
+        for (int n = 0; n < size; ++n)
+            ret[n] = r.nextInt(1000);
+        return ret;
+    }
+
+    @Test
+    public void testSharedLimit()
+    {
+        // room for 5 chunks across 3 lists that each allow 50
+        var budget = new DecompressionBudget(5 * 100 * Long.BYTES);
+        var lists = new ArrayList<ListOfLong>();
+        for (int n = 0; n < 3; ++n)
+        {
+            lists.add(newList(3000, n));
+            budget.register(lists.get(n));
+        }
+        Assert.assertTrue(budget.usedBytes() <= budget.getMaxBytes());
+
+        var r = new Random(1);
+        for (int n = 0; n < 5000; ++n)
+        {
+            int l = r.nextInt(lists.size());
+            int idx = r.nextInt(3000);
+            Assert.assertEquals(expected(3000, l)[idx], lists.get(l).get(idx));
+            Assert.assertTrue(budget.usedBytes() <= budget.getMaxBytes());
+            Assert.assertEquals(lists.stream().mapToLong(ListOfLong::decompressedBytes).sum(), budget.usedBytes());
+        }
+        Assert.assertTrue(budget.hitCount() + budget.missCount() > 0);
+
+        // a list that is not being used gives up its chunks to the others
+        for (int n = 0; n < 3000; n += 100)
+        {
+            lists.get(0).get(n);
+            lists.get(1).get(n);
+        }
+        Assert.assertEquals(0, lists.get(2).decompressedBytes());
+        Assert.assertArrayEquals(expected(3000, 2), lists.get(2).toArray());
+
+        budget.unregister(lists.get(0));
+        Assert.assertEquals(lists.get(1).decompressedBytes() + lists.get(2).decompressedBytes(), budget.usedBytes());
+        for (int n = 0; n < 3000; n += 100)
+            lists.get(0).get(n);
+        Assert.assertTrue(lists.get(0).decompressedBytes() > budget.getMaxBytes());
+        Assert.assertTrue(budget.usedBytes() <= budget.getMaxBytes());
+
+        lists.get(1).clear();
+        Assert.assertEquals(lists.get(2).decompressedBytes() + lists.get(1).decompressedBytes(), budget.usedBytes());
+    }
+
+    @Test
+    public void testInterleavedIteration()
+    {
+        // the budget only holds one chunk, so reading either list compresses the other's chunk
+        var budget = new DecompressionBudget(100 * Long.BYTES);
+        var a = newList(1000, 3);
+        var b = newList(1000, 4);
+        budget.register(a);
+        budget.register(b);
+
+        var ia = a.longIterator();
+        var ib = b.longIterator();
+        var ea = expected(1000, 3);
+        var eb = expected(1000, 4);
+        for (int n = 0; n < 1000; ++n)
+        {
+            Assert.assertEquals(ea[n], ia.next());
+            Assert.assertEquals(eb[n], ib.next());
+        }
+        Assert.assertFalse(ia.hasNext() || ib.hasNext());
+        Assert.assertEquals(1, budget.size());
+    }
+
+    @Test
+    public void testReadsDuringIteration()
+    {
+        // reads of either list compress the chunks being iterated, and their arrays are free to reuse
+        var budget = new DecompressionBudget(2 * 100 * Long.BYTES);
+        var a = newList(2000, 5);
+        var b = newList(2000, 6);
+        budget.register(a);
+        budget.register(b);
+
+        var ia = a.longIterator();
+        var ib = b.longIterator();
+        var ea = expected(2000, 5);
+        var eb = expected(2000, 6);
+        for (int n = 0; n < 2000; ++n)
+        {
+            Assert.assertEquals(ea[n], ia.next());
+            Assert.assertEquals(eb[n], ib.next());
+            if (n % 37 == 0)
+            {
+                int idx = (n * 7) % 2000;
+                Assert.assertEquals(ea[idx], a.get(idx));
+                Assert.assertEquals(eb[idx], b.get(idx));
+            }
+        }
+        Assert.assertFalse(ia.hasNext() || ib.hasNext());
+        Assert.assertTrue(budget.usedBytes() <= budget.getMaxBytes());
+    }
+
+    @Test
+    public void testCompressOutsideLock()
+    {
+        var budget = new DecompressionBudget(100 * Long.BYTES);
+        var locked = new int[2];
+        var codec = new DeflateCodec() {
+            @Override
+            public byte[] compress(long[] values, int count) {
+                locked[Thread.holdsLock(budget) ? 1 : 0]++;
+                return super.compress(values, count);
+            }
+        };
+        var lst = new ListOfLong(100, 1.5, 50, codec);
+        budget.register(lst);
+        for (int n = 0; n < 1000; ++n)
+            lst.add(n);
+        for (int n = 0; n < 1000; n += 100)
+            Assert.assertEquals(n, lst.get(n));
+        Assert.assertTrue(locked[0] > 0);
+        Assert.assertEquals(0, locked[1]);
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException
+    {
+        var budget = new DecompressionBudget(10 * 100 * Long.BYTES);
+        var lock = new Object();
+        var threads = new ArrayList<Thread>();
+        var failures = new ArrayList<Throwable>();
+        for (int t = 0; t < 4; ++t)
+        {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                try
+                {
+                    ListOfLong lst;
+                    synchronized (lock)
+                    {
+                        lst = newList(2000, seed);
+                        budget.register(lst);
+                    }
+                    var exp = expected(2000, seed);
+                    var r = new Random(seed);
+                    for (int n = 0; n < 2000; ++n)
+                    {
+                        int idx = r.nextInt(2000);
+                        synchronized (lock)
+                        {
+                            Assert.assertEquals(exp[idx], lst.get(idx));
+                        }
+                    }
+                    synchronized (lock)
+                    {
+                        budget.unregister(lst);
+                    }
+                }
+                catch (Throwable e)
+                {
+                    synchronized (failures)
+                    {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (var t : threads)
+            t.start();
+        for (var t : threads)
+            t.join();
+
+        Assert.assertEquals(new ArrayList<Throwable>(), failures);
+        Assert.assertEquals(0, budget.usedBytes());
+        Assert.assertEquals(0, budget.size());
+    }
+
+    @Test
+    public void testOtherTypes()
+    {
+        var budget = new DecompressionBudget(4 * 128 * Double.BYTES);
+        var d = new ListOfDouble(128, 1.5, 50, new DeflateCodec());
+        var f = new ListOfFloat(128, 1.5, 50, new DeflateCodec());
+        var i = new ListOfInt(128, 1.5, 50, new DeflateCodec());
+        budget.register(d);
+        budget.register(f);
+        budget.register(i);
+        for (int n = 0; n < 5000; ++n)
+        {
+            d.add(n);
+            f.add(n);
+            i.add(n);
+        }
+        for (int n = 0; n < 5000; n += 7)
+        {
+            Assert.assertEquals(n, d.get(n), 0);
+            Assert.assertEquals(n, f.get(n), 0);
+            Assert.assertEquals(n, i.get(n));
+            Assert.assertTrue(budget.usedBytes() <= budget.getMaxBytes());
+        }
+        Assert.assertEquals(d.decompressedBytes() + f.decompressedBytes() + i.decompressedBytes(), budget.usedBytes());
+
+        // inserts grow chunks past chunkSize, the budget follows
+        for (int n = 0; n < 50; ++n)
+        {
+            d.add(10, -n);
+            Assert.assertEquals(d.decompressedBytes() + f.decompressedBytes() + i.decompressedBytes(), budget.usedBytes());
+        }
+        Assert.assertEquals(-49, d.get(10), 0);
+        Assert.assertEquals(10, d.get(60), 0);
+
+        d.trimToSize();
+        Assert.assertEquals(d.decompressedBytes() + f.decompressedBytes() + i.decompressedBytes(), budget.usedBytes());
+    }
+
+    @Test
+    public void testExceptions()
+    {
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DecompressionBudget(0));
+
+        var lst = new ListOfInt();
+        new DecompressionBudget(1000).register(lst);
+        Assert.assertThrows(IllegalArgumentException.class, () -> new DecompressionBudget(1000).register(lst));
+    }
+}
@@ -0,0 +1,168 @@
+package memorypalace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+public class TestEvictionPolicies
+{
+    static final List<Supplier<EvictionPolicy>> POLICIES = List.of(EvictionPolicy::lru, EvictionPolicy::clock,
+            EvictionPolicy::lfu, EvictionPolicy::arc, EvictionPolicy::tinyLfu);
+
+    /**
+     * Run a trace of keys through a policy the way a list does, checking that the newest key is
+     * never evicted and that the policy holds exactly the keys it should.
+     * @return The hit ratio.
+     */
+    double simulate(EvictionPolicy policy, int capacity, int[] trace)
+    {
+        policy.setCapacity(capacity);
+        var held = new HashSet<Integer>();
+        for (int key : trace)
+        {
+            if (held.contains(key))
+            {
+                policy.recordHit(key);
+                continue;
+            }
+
+            policy.recordMiss(key);
+            held.add(key);
+            while (policy.size() > capacity)
+            {
+                var victim = policy.evict();
+                Assert.assertNotEquals(key, victim);
+                Assert.assertTrue(held.remove(victim));
+            }
+            Assert.assertEquals(held.size(), policy.size());
+        }
+
+        Assert.assertEquals(trace.length, policy.hitCount() + policy.missCount());
+        return policy.hitRatio();
+    }
+
+    /**
+     * A small hot set read constantly, interrupted by scans over many keys that are each read once.
+     */
+    int[] scanTrace()
+    {
+        var r = new Random(3);
+        var trace = new ArrayList<Integer>();
+        int scanKey = 1000;
+        for (int round = 0; round < 50; ++round)
+        {
+            for (int n = 0; n < 200; ++n)
+                trace.add(r.nextInt(8));
+            for (int n = 0; n < 30; ++n)
+                trace.add(scanKey++);
+        }
+        return trace.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testPolicies()
+    {
+        var r = new Random(7);
+        var random = new int[5000];
+        for (int n = 0; n < random.length; ++n)
+            random[n] = (int)Math.abs(r.nextGaussian() * 20);
+
+        for (var policy : POLICIES)
+        {
+            for (int capacity : new int[] {2, 3, 10, 200})
+                Assert.assertTrue(simulate(policy.get(), capacity, random) > 0);
+
+            var p = policy.get();
+            simulate(p, 4, random);
+            p.clear();
+            Assert.assertEquals(0, p.size());
+            p.recordMiss(1);
+            p.recordMiss(2);
+            p.remove(1);
+            Assert.assertEquals(1, p.size());
+            Assert.assertEquals(2, p.evict());
+        }
+    }
+
+    @Test
+    public void testScanResistance()
+    {
+        var trace = scanTrace();
+        double lru = simulate(EvictionPolicy.lru(), 10, trace);
+        Assert.assertTrue(simulate(EvictionPolicy.arc(), 10, trace) > lru);
+        Assert.assertTrue(simulate(EvictionPolicy.tinyLfu(), 10, trace) > lru);
+        Assert.assertTrue(simulate(EvictionPolicy.lfu(), 10, trace) > lru);
+    }
+
+    @Test
+    public void testLargeCapacity()
+    {
+        var trace = scanTrace();
+        for (var policy : POLICIES)
+        {
+            for (int capacity : new int[] {1 << 28, Integer.MAX_VALUE})
+                Assert.assertTrue(simulate(policy.get(), capacity, trace) > 0);
+        }
+
+        // no count limit, as when a list is limited by bytes alone
+        var lst = new ListOfDouble(100, 1.5, Integer.MAX_VALUE, new DeflateCodec(), EvictionPolicy.tinyLfu());
+        for (int n = 0; n < 20_000; ++n)
+            lst.add(n % 300);
+        Assert.assertEquals(199, lst.get(19_999), 0);
+    }
+
+    @Test
+    public void testSmallCapacity()
+    {
+        // a key read between pairs of keys that are only read once, which LRU evicts at capacity 2
+        var trace = new ArrayList<Integer>();
+        for (int n = 0; n < 300; ++n)
+        {
+            trace.add(0);
+            trace.add(1000 + n * 2);
+            trace.add(1001 + n * 2);
+        }
+        var keys = trace.stream().mapToInt(Integer::intValue).toArray();
+        Assert.assertEquals(0, simulate(EvictionPolicy.lru(), 2, keys), 0);
+        Assert.assertTrue(simulate(EvictionPolicy.tinyLfu(), 2, keys) > 0.3);
+    }
+
+    @Test
+    public void testLists()
+    {
+        for (var policy : POLICIES)
+        {
+            var p = policy.get();
+            var lst = new ListOfDouble(50, 1.5, 4, new DeflateCodec(), p);
+            var aList = new ArrayList<Double>();
+            for (int n = 0; n < 2000; ++n)
+            {
+                lst.add(n % 300);
+                aList.add((double)(n % 300));
+            }
+
+            var r = new Random(9);
+            for (int n = 0; n < 3000; ++n)
+            {
+                // mostly reads of a hot region with occasional reads and inserts anywhere
+                int idx = n % 5 == 0 ? r.nextInt(aList.size()) : 500 + r.nextInt(100);
+                if (n % 50 == 0)
+                {
+                    lst.add(idx, -n);
+                    aList.add(idx, (double)-n);
+                }
+                else
+                    Assert.assertEquals(aList.get(idx), lst.get(idx), 0);
+            }
+            Assert.assertArrayEquals(aList.stream().mapToDouble(Double::doubleValue).toArray(), lst.toArray(), 0);
+            Assert.assertTrue(p.hitRatio() > 0.5);
+        }
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100, 1.5, 2, new DeflateCodec(), null));
+    }
+}
@@ -5,8 +5,13 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class TestListOfDouble
 {
@@ -276,6 +281,7 @@ public class TestListOfDouble
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfDouble(100, .99, 1));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfDouble(100, 2.01, 1));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfDouble(100, 1.5, 0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfDouble(100, 1.5, 2, null));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfDouble(100).add(10, 1));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfDouble(100).remove(10));
     }
@@ -360,4 +366,328 @@ public class TestListOfDouble
 
         Assert.assertEquals(count, nextCount);
     }
+
+    @Test
+    public void testConstantChunks()
+    {
+        var lst = new ListOfDouble(10, 1.5, 2);
+        var aList = new ArrayList<Double>();
+
+        for (int n = 0; n < 1000; ++n)
+        {
+            lst.add(n < 500 ? 0 : 7);
+            aList.add((double)(n < 500 ? 0 : 7));
+        }
+
+        Assert.assertTrue(lst.usedMemory() < lst.uncompressedSize() / 4);
+        compareLists(aList, lst);
+
+        var iter = lst.doubleIterator();
+        var aIter = aList.iterator();
+        while (iter.hasNext())
+            Assert.assertEquals(aIter.next(), iter.next(), 1e-10);
+        Assert.assertFalse(aIter.hasNext());
+
+        lst.set(250, 3);
+        aList.set(250, (double)3);
+        lst.add(600, 4);
+        aList.add(600, (double)4);
+        lst.remove(10);
+        aList.remove(10);
+        compareLists(aList, lst);
+
+        // append to a chunk that was compressed as a constant
+        lst.clear();
+        aList.clear();
+        for (int n = 0; n < 25; ++n)
+        {
+            lst.add(n < 20 ? n : 0);
+            aList.add((double)(n < 20 ? n : 0));
+        }
+        lst.get(0);
+        lst.get(10);
+        lst.add(8);
+        aList.add((double)8);
+        lst.get(0);
+        lst.get(10);
+        compareLists(aList, lst);
+    }
+
+    @Test
+    public void testIncompressibleChunks()
+    {
+        var lst = new ListOfDouble(100, 1.5, 2);
+        var aList = new ArrayList<Double>();
+
+        Random r = new Random(11);
+        for (int n = 0; n < 5000; ++n)
+        {
+            var v = r.nextDouble();
+            lst.add(v);
+            aList.add(v);
+        }
+
+        Assert.assertTrue(lst.usedMemory() <= lst.uncompressedSize());
+        compareLists(aList, lst);
+
+        lst.set(150, aList.get(10));
+        aList.set(150, aList.get(10));
+        lst.remove(3000);
+        aList.remove(3000);
+        compareLists(aList, lst);
+    }
+
+    @Test
+    public void testIndexOf()
+    {
+        var lst = new ListOfDouble(10, 1.5, 2);
+        var aList = new ArrayList<Double>();
+        for (int n = 0; n < 1000; ++n)
+        {
+            lst.add(n % 300);
+            aList.add((double)(n % 300));
+        }
+        for (int n = 0; n < 10; ++n)
+            lst.add(5000);
+
+        for (int n = 0; n < 300; n += 7)
+            Assert.assertEquals(aList.indexOf((double)n), lst.indexOf(n));
+        Assert.assertEquals(1000, lst.indexOf(5000));
+        Assert.assertEquals(-1, lst.indexOf(301));
+        Assert.assertTrue(lst.contains(299));
+        Assert.assertFalse(lst.contains(-1));
+    }
+
+    @Test
+    public void testArrayReuse()
+    {
+        var lst = new ListOfDouble(50, 1.5, 2);
+        var aList = new ArrayList<Double>();
+
+        // runs of random, constant and steadily changing values, so chunks take every form
+        Random r = new Random(5);
+        for (int n = 0; n < 3000; ++n)
+        {
+            double v = n % 900 < 300 ? r.nextDouble() : n % 900 < 600 ? 7 : (double)n;
+            lst.add(v);
+            aList.add(v);
+        }
+
+        for (int n = 0; n < 2000; ++n)
+        {
+            int idx = r.nextInt(aList.size());
+            switch (n % 4)
+            {
+                case 0:
+                    Assert.assertEquals(aList.get(idx), lst.get(idx), 0);
+                    break;
+                case 1:
+                    lst.set(idx, (double)n);
+                    aList.set(idx, (double)n);
+                    break;
+                case 2:
+                    lst.add(idx, (double)-n);
+                    aList.add(idx, (double)-n);
+                    break;
+                default:
+                    lst.remove(idx);
+                    aList.remove(idx);
+            }
+        }
+        compareLists(aList, lst);
+
+        lst.get(10);
+        lst.trimToSize();
+        compareLists(aList, lst);
+
+        // chunks read in turn decompress into the arrays given up by the chunks compressed before them
+        var arrays = Collections.newSetFromMap(new IdentityHashMap<double[], Boolean>());
+        var decompressions = new int[1];
+        var maxCount = new int[1];
+        var codec = new DeflateCodec() {
+            @Override
+            public byte[] compress(double[] values, int count) {
+                maxCount[0] = Math.max(maxCount[0], count);
+                return super.compress(values, count);
+            }
+
+            @Override
+            public void decompress(byte[] compressed, double[] values, int count) {
+                arrays.add(values);
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var pooled = new ListOfDouble(50, 1.5, 2, codec);
+        for (int n = 0; n < 1000; ++n)
+            pooled.add(r.nextInt(100));
+        for (int n = 0; n < 200; ++n)
+            pooled.get(50 * (n % 20));
+        Assert.assertTrue(arrays.size() <= 4);
+
+        // arrays grown by inserts are not reused, so new chunks still hold chunkSize values
+        for (int n = 2; n < 19; ++n)
+            pooled.add(51 * n + 10, -1);
+        pooled.get(0);
+        pooled.get(50);
+        maxCount[0] = 0;
+        var values = new double[500];
+        for (int n = 0; n < values.length; ++n)
+            values[n] = r.nextInt(100);
+        pooled.addAll(values);
+        for (int n = 0; n < values.length; n += 50)
+            Assert.assertEquals(values[n], pooled.get(pooled.size() - values.length + n), 0);
+        Assert.assertEquals(50, maxCount[0]);
+        Assert.assertEquals(2 * 50 * Double.BYTES, pooled.decompressedBytes());
+
+        // reads during iteration compress the chunk being iterated, its array must not be reused
+        // while the iterators, one a few values behind the other, are still reading it
+        var expected = pooled.toArray();
+        arrays.clear();
+        decompressions[0] = 0;
+        var iter = pooled.doubleIterator();
+        var behind = pooled.doubleIterator();
+        for (int n = 0; n < expected.length; ++n)
+        {
+            Assert.assertEquals(expected[n], iter.next(), 0);
+            if (n >= 20)
+                Assert.assertEquals(expected[n - 20], behind.next(), 0);
+            if (n % 37 == 0)
+            {
+                int idx = (n * 7) % expected.length;
+                Assert.assertEquals(expected[idx], pooled.get(idx), 0);
+            }
+        }
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertTrue(arrays.size() < decompressions[0]);
+    }
+
+    @Test
+    public void testHotChunkStaysDecompressed()
+    {
+        var decompressions = new int[1];
+        var codec = new DeflateCodec() {
+            @Override
+            public void decompress(byte[] compressed, double[] values, int count) {
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var lst = new ListOfDouble(100, 1.5, 2, codec);
+        for (int n = 0; n < 1000; ++n)
+            lst.add(n);
+
+        // every read of a cold chunk decompresses it, the hot chunk is only decompressed once
+        for (int n = 0; n < 100; ++n)
+        {
+            Assert.assertEquals(5, lst.get(5), 0);
+            Assert.assertEquals(100 * (1 + n % 9), lst.get(100 * (1 + n % 9)), 0);
+        }
+        Assert.assertEquals(101, decompressions[0]);
+    }
+
+    @Test
+    public void testByteBudget()
+    {
+        // room for 3 chunks of 100 values, however many chunks are allowed
+        long budget = 3 * 100 * Double.BYTES;
+        var lst = new ListOfDouble(100, 1.5, Integer.MAX_VALUE, budget, new DeflateCodec(), EvictionPolicy.lru());
+        var aList = new ArrayList<Double>();
+        for (int n = 0; n < 2000; ++n)
+        {
+            lst.add(n % 77);
+            aList.add((double)(n % 77));
+            Assert.assertTrue(lst.decompressedBytes() <= budget);
+        }
+
+        Random r = new Random(4);
+        for (int n = 0; n < 500; ++n)
+        {
+            int idx = r.nextInt(aList.size());
+            if (n % 10 == 0)
+            {
+                lst.add(idx, (double)n);
+                aList.add(idx, (double)n);
+            }
+            else
+                Assert.assertEquals(aList.get(idx), lst.get(idx), 0);
+            // chunks grown by inserts are compressed to get back within the limit
+            Assert.assertTrue(lst.decompressedBytes() <= budget);
+        }
+        compareLists(aList, lst);
+
+        // a chunk emptied by removes stops counting against the limit
+        var emptied = new ListOfDouble(100, 1.5, 4, new DeflateCodec());
+        for (int n = 0; n < 300; ++n)
+            emptied.add(n);
+        emptied.get(0);
+        for (int n = 0; n < 100; ++n)
+            emptied.remove(100);
+        Assert.assertEquals(2 * 100 * Double.BYTES, emptied.decompressedBytes());
+        Assert.assertEquals(200, emptied.size());
+
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new ListOfDouble(100, 1.5, 2, 100, new DeflateCodec(), EvictionPolicy.lru()));
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException
+    {
+        var threads = Collections.synchronizedSet(new HashSet<Thread>());
+        var arrays = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<double[], Boolean>()));
+        var decompressions = new int[1];
+        var codec = new DeflateCodec() {
+            @Override
+            public void decompress(byte[] compressed, double[] values, int count) {
+                threads.add(Thread.currentThread());
+                arrays.add(values);
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var lst = new ListOfDouble(100, 1.5, 2, codec);
+        for (int n = 0; n < 5000; ++n)
+            lst.add(n);
+
+        var executor = Executors.newFixedThreadPool(2);
+        var i = lst.doubleIterator(3, executor);
+        // chunks that change while being read ahead are decompressed again
+        lst.set(150, -1);
+        lst.get(4950);
+        for (int n = 0; n < 5000; ++n)
+            Assert.assertEquals(n == 150 ? -1 : n, i.next(), 0);
+        Assert.assertFalse(i.hasNext());
+        Assert.assertTrue(threads.size() > 1);
+
+        Assert.assertEquals(lst.stream().sum(), lst.stream(2, executor).sum(), 0);
+        Assert.assertEquals(5000, lst.stream(1, Runnable::run).count());
+
+        // the arrays read ahead into come from the pool and go back to it
+        arrays.clear();
+        var ahead = lst.doubleIterator(2, Runnable::run);
+        while (ahead.hasNext())
+            ahead.next();
+        Assert.assertTrue(arrays.size() < 10);
+
+        // decompression that has not started is cancelled when an iterator or stream is closed, and
+        // the arrays it would have used go back to the pool
+        var queued = new ArrayList<Runnable>();
+        var abandoned = lst.doubleIterator(3, queued::add);
+        abandoned.next();
+        abandoned.close();
+        Assert.assertEquals(2, lst.pooledArrays());
+        try (var stream = lst.stream(3, queued::add))
+        {
+            Assert.assertEquals(10, stream.limit(10).count());
+        }
+        Assert.assertEquals(6, queued.size());
+        int decompressed = decompressions[0];
+        queued.forEach(Runnable::run);
+        Assert.assertEquals(decompressed, decompressions[0]);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> lst.doubleIterator(0, executor));
+        Assert.assertThrows(IllegalArgumentException.class, () -> lst.doubleIterator(1, null));
+    }
 }
@@ -5,8 +5,13 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class TestListOfInt {
     public ListOfInt getArr()
@@ -276,6 +281,7 @@ public class TestListOfInt {
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100, .99, 1));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100, 2.01, 1));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100, 1.5, 0));
+        Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100, 1.5, 2, null));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100).add(10, 1));
         Assert.assertThrows(IllegalArgumentException.class, () -> new ListOfInt(100).remove(10));
     }
@@ -360,4 +366,328 @@ public class TestListOfInt {
 
         Assert.assertEquals(count, nextCount);
     }
+
+    @Test
+    public void testConstantChunks()
+    {
+        var lst = new ListOfInt(10, 1.5, 2);
+        var aList = new ArrayList<Integer>();
+
+        for (int n = 0; n < 1000; ++n)
+        {
+            lst.add(n < 500 ? 0 : 7);
+            aList.add((n < 500 ? 0 : 7));
+        }
+
+        Assert.assertTrue(lst.usedMemory() < lst.uncompressedSize() / 4);
+        compareLists(aList, lst);
+
+        var iter = lst.intIterator();
+        var aIter = aList.iterator();
+        while (iter.hasNext())
+            Assert.assertEquals(aIter.next(), iter.next(), 1e-10);
+        Assert.assertFalse(aIter.hasNext());
+
+        lst.set(250, 3);
+        aList.set(250, 3);
+        lst.add(600, 4);
+        aList.add(600, 4);
+        lst.remove(10);
+        aList.remove(10);
+        compareLists(aList, lst);
+
+        // append to a chunk that was compressed as a constant
+        lst.clear();
+        aList.clear();
+        for (int n = 0; n < 25; ++n)
+        {
+            lst.add(n < 20 ? n : 0);
+            aList.add((n < 20 ? n : 0));
+        }
+        lst.get(0);
+        lst.get(10);
+        lst.add(8);
+        aList.add(8);
+        lst.get(0);
+        lst.get(10);
+        compareLists(aList, lst);
+    }
+
+    @Test
+    public void testIncompressibleChunks()
+    {
+        var lst = new ListOfInt(100, 1.5, 2);
+        var aList = new ArrayList<Integer>();
+
+        Random r = new Random(11);
+        for (int n = 0; n < 5000; ++n)
+        {
+            var v = r.nextInt();
+            lst.add(v);
+            aList.add(v);
+        }
+
+        Assert.assertTrue(lst.usedMemory() <= lst.uncompressedSize());
+        compareLists(aList, lst);
+
+        lst.set(150, aList.get(10));
+        aList.set(150, aList.get(10));
+        lst.remove(3000);
+        aList.remove(3000);
+        compareLists(aList, lst);
+    }
+
+    @Test
+    public void testIndexOf()
+    {
+        var lst = new ListOfInt(10, 1.5, 2);
+        var aList = new ArrayList<Integer>();
+        for (int n = 0; n < 1000; ++n)
+        {
+            lst.add(n % 300);
+            aList.add((n % 300));
+        }
+        for (int n = 0; n < 10; ++n)
+            lst.add(5000);
+
+        for (int n = 0; n < 300; n += 7)
+            Assert.assertEquals(aList.indexOf(n), lst.indexOf(n));
+        Assert.assertEquals(1000, lst.indexOf(5000));
+        Assert.assertEquals(-1, lst.indexOf(301));
+        Assert.assertTrue(lst.contains(299));
+        Assert.assertFalse(lst.contains(-1));
+    }
+
+    @Test
+    public void testArrayReuse()
+    {
+        var lst = new ListOfInt(50, 1.5, 2);
+        var aList = new ArrayList<Integer>();
+
+        // runs of random, constant and steadily changing values, so chunks take every form
+        Random r = new Random(5);
+        for (int n = 0; n < 3000; ++n)
+        {
+            int v = n % 900 < 300 ? r.nextInt() : n % 900 < 600 ? 7 : (int)n;
+            lst.add(v);
+            aList.add(v);
+        }
+
+        for (int n = 0; n < 2000; ++n)
+        {
+            int idx = r.nextInt(aList.size());
+            switch (n % 4)
+            {
+                case 0:
+                    Assert.assertEquals(aList.get(idx), lst.get(idx), 0);
+                    break;
+                case 1:
+                    lst.set(idx, (int)n);
+                    aList.set(idx, (int)n);
+                    break;
+                case 2:
+                    lst.add(idx, (int)-n);
+                    aList.add(idx, (int)-n);
+                    break;
+                default:
+                    lst.remove(idx);
+                    aList.remove(idx);
+            }
+        }
+        compareLists(aList, lst);
+
+        lst.get(10);
+        lst.trimToSize();
+        compareLists(aList, lst);
+
+        // chunks read in turn decompress into the arrays given up by the chunks compressed before them
+        var arrays = Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>());
+        var decompressions = new int[1];
+        var maxCount = new int[1];
+        var codec = new DeflateCodec() {
+            @Override
+            public byte[] compress(int[] values, int count) {
+                maxCount[0] = Math.max(maxCount[0], count);
+                return super.compress(values, count);
+            }
+
+            @Override
+            public void decompress(byte[] compressed, int[] values, int count) {
+                arrays.add(values);
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var pooled = new ListOfInt(50, 1.5, 2, codec);
+        for (int n = 0; n < 1000; ++n)
+            pooled.add(r.nextInt(100));
+        for (int n = 0; n < 200; ++n)
+            pooled.get(50 * (n % 20));
+        Assert.assertTrue(arrays.size() <= 4);
+
+        // arrays grown by inserts are not reused, so new chunks still hold chunkSize values
+        for (int n = 2; n < 19; ++n)
+            pooled.add(51 * n + 10, -1);
+        pooled.get(0);
+        pooled.get(50);
+        maxCount[0] = 0;
+        var values = new int[500];
+        for (int n = 0; n < values.length; ++n)
+            values[n] = r.nextInt(100);
+        pooled.addAll(values);
+        for (int n = 0; n < values.length; n += 50)
+            Assert.assertEquals(values[n], pooled.get(pooled.size() - values.length + n));
+        Assert.assertEquals(50, maxCount[0]);
+        Assert.assertEquals(2 * 50 * Integer.BYTES, pooled.decompressedBytes());
+
+        // reads during iteration compress the chunk being iterated, its array must not be reused
+        // while the iterators, one a few values behind the other, are still reading it
+        var expected = pooled.toArray();
+        arrays.clear();
+        decompressions[0] = 0;
+        var iter = pooled.intIterator();
+        var behind = pooled.intIterator();
+        for (int n = 0; n < expected.length; ++n)
+        {
+            Assert.assertEquals(expected[n], iter.next());
+            if (n >= 20)
+                Assert.assertEquals(expected[n - 20], behind.next());
+            if (n % 37 == 0)
+            {
+                int idx = (n * 7) % expected.length;
+                Assert.assertEquals(expected[idx], pooled.get(idx));
+            }
+        }
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertTrue(arrays.size() < decompressions[0]);
+    }
+
+    @Test
+    public void testHotChunkStaysDecompressed()
+    {
+        var decompressions = new int[1];
+        var codec = new DeflateCodec() {
+            @Override
+            public void decompress(byte[] compressed, int[] values, int count) {
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var lst = new ListOfInt(100, 1.5, 2, codec);
+        for (int n = 0; n < 1000; ++n)
+            lst.add(n);
+
+        // every read of a cold chunk decompresses it, the hot chunk is only decompressed once
+        for (int n = 0; n < 100; ++n)
+        {
+            Assert.assertEquals(5, lst.get(5), 0);
+            Assert.assertEquals(100 * (1 + n % 9), lst.get(100 * (1 + n % 9)), 0);
+        }
+        Assert.assertEquals(101, decompressions[0]);
+    }
+
+    @Test
+    public void testByteBudget()
+    {
+        // room for 3 chunks of 100 values, however many chunks are allowed
+        long budget = 3 * 100 * Integer.BYTES;
+        var lst = new ListOfInt(100, 1.5, Integer.MAX_VALUE, budget, new DeflateCodec(), EvictionPolicy.lru());
+        var aList = new ArrayList<Integer>();
+        for (int n = 0; n < 2000; ++n)
+        {
+            lst.add(n % 77);
+            aList.add((int)(n % 77));
+            Assert.assertTrue(lst.decompressedBytes() <= budget);
+        }
+
+        Random r = new Random(4);
+        for (int n = 0; n < 500; ++n)
+        {
+            int idx = r.nextInt(aList.size());
+            if (n % 10 == 0)
+            {
+                lst.add(idx, (int)n);
+                aList.add(idx, (int)n);
+            }
+            else
+                Assert.assertEquals(aList.get(idx), lst.get(idx), 0);
+            // chunks grown by inserts are compressed to get back within the limit
+            Assert.assertTrue(lst.decompressedBytes() <= budget);
+        }
+        compareLists(aList, lst);
+
+        // a chunk emptied by removes stops counting against the limit
+        var emptied = new ListOfInt(100, 1.5, 4, new DeflateCodec());
+        for (int n = 0; n < 300; ++n)
+            emptied.add(n);
+        emptied.get(0);
+        for (int n = 0; n < 100; ++n)
+            emptied.remove(100);
+        Assert.assertEquals(2 * 100 * Integer.BYTES, emptied.decompressedBytes());
+        Assert.assertEquals(200, emptied.size());
+
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new ListOfInt(100, 1.5, 2, 100, new DeflateCodec(), EvictionPolicy.lru()));
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException
+    {
+        var threads = Collections.synchronizedSet(new HashSet<Thread>());
+        var arrays = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>()));
+        var decompressions = new int[1];
+        var codec = new DeflateCodec() {
+            @Override
+            public void decompress(byte[] compressed, int[] values, int count) {
+                threads.add(Thread.currentThread());
+                arrays.add(values);
+                decompressions[0]++;
+                super.decompress(compressed, values, count);
+            }
+        };
+        var lst = new ListOfInt(100, 1.5, 2, codec);
+        for (int n = 0; n < 5000; ++n)
+            lst.add(n);
+
+        var executor = Executors.newFixedThreadPool(2);
+        var i = lst.intIterator(3, executor);
+        // chunks that change while being read ahead are decompressed again
+        lst.set(150, -1);
+        lst.get(4950);
+        for (int n = 0; n < 5000; ++n)
+            Assert.assertEquals(n == 150 ? -1 : n, i.next());
+        Assert.assertFalse(i.hasNext());
+        Assert.assertTrue(threads.size() > 1);
+
+        Assert.assertEquals(lst.stream().sum(), lst.stream(2, executor).sum());
+        Assert.assertEquals(5000, lst.stream(1, Runnable::run).count());
+
+        // the arrays read ahead into come from the pool and go back to it
+        arrays.clear();
+        var ahead = lst.intIterator(2, Runnable::run);
+        while (ahead.hasNext())
+            ahead.next();
+        Assert.assertTrue(arrays.size() < 10);
+
+        // decompression that has not started is cancelled when an iterator or stream is closed, and
+        // the arrays it would have used go back to the pool
+        var queued = new ArrayList<Runnable>();
+        var abandoned = lst.intIterator(3, queued::add);
+        abandoned.next();
+        abandoned.close();
+        Assert.assertEquals(2, lst.pooledArrays());
+        try (var stream = lst.stream(3, queued::add))
+        {
+            Assert.assertEquals(10, stream.limit(10).count());
+        }
+        Assert.assertEquals(6, queued.size());
+        int decompressed = decompressions[0];
+        queued.forEach(Runnable::run);
+        Assert.assertEquals(decompressed, decompressions[0]);
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> lst.intIterator(0, executor));
+        Assert.assertThrows(IllegalArgumentException.class, () -> lst.intIterator(1, null));
+    }
 }